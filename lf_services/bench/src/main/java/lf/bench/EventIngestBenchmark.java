@@ -0,0 +1,161 @@
+package lf.bench;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Routers;
+import lf.actor.VehicleEventIngest;
+import lf.message.FleetManagerMsg;
+import lf.message.VehicleEventMsg;
+import lf.message.WebPortalMsg;
+import lf.model.Vehicle;
+
+/**
+ * The web portal's vehicle update path: a fixed pool of long-lived
+ * VehicleEventIngest workers (consistent-hashed on vehicle id), against the
+ * one-shot event actor spawned per update it replaced.
+ * <p>
+ * Each invocation asks UPDATES updates (over 'vehicles' distinct vehicles) in
+ * flight at once, and waits for them all. The fleet manager is a stub that
+ * answers at once - so what is measured is the ingestion path itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventIngestBenchmark {
+
+    private static final int UPDATES = 1000;
+    private static final Duration ASK_TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({ "8" })
+    public int poolSize;
+
+    @Param({ "100", "10000" })
+    public int vehicles;
+
+    private ActorSystem<Void> system;
+    private ActorRef<VehicleEventMsg.Message> pool;
+    private ActorRef<VehicleEventMsg.Message> spawner;
+    private ActorRef<FleetManagerMsg.Message> fleetManager;
+    private Vehicle[] updates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = ActorSystem.create(Behaviors.empty(), "bench", ConfigFactory.parseString(
+                "akka.loglevel = WARNING\n"
+                + "akka.actor.provider = local\n"
+                + "akka.fleet-manager.metrics.log-interval = 0\n")
+            .withFallback(ConfigFactory.load()));
+
+        fleetManager = system.systemActorOf(stubFleetManager(), "fleetManager", Props.empty());
+        pool = system.systemActorOf(
+            Routers.pool(poolSize, VehicleEventIngest.create(Duration.ofSeconds(30)))
+                .withConsistentHashingRouting(10, EventIngestBenchmark::routingKey),
+            "eventIngestPool", Props.empty());
+        spawner = system.systemActorOf(eventSpawner(), "eventSpawner", Props.empty());
+
+        updates = new Vehicle[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            updates[i] = Vehicle.createForMileage(Vehicle.longIdToWotId(1 + (i % vehicles)), "1", (float) i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public void pool() {
+        askAll(pool);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public void spawnPerUpdate() {
+        askAll(spawner);
+    }
+
+    private void askAll(ActorRef<VehicleEventMsg.Message> target) {
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            Vehicle vehicle = updates[i];
+            replies[i] = AskPattern.ask(target,
+                    (ActorRef<WebPortalMsg.VehicleToWebP> ref) -> new VehicleEventMsg.EventFromWebP(
+                        vehicle, ref, null, fleetManager, VehicleEventMsg.Source.WOT),
+                    ASK_TIMEOUT, system.scheduler())
+                .toCompletableFuture();
+        }
+        CompletableFuture.allOf(replies).join();
+    }
+
+    private static String routingKey(VehicleEventMsg.Message message) {
+        if (message instanceof VehicleEventMsg.EventFromWebP) {
+            return Long.toString(((VehicleEventMsg.EventFromWebP) message).vehicle.getVehicleIdLong());
+        }
+        return "";
+    }
+
+    // Answers every update at once.
+    private static Behavior<FleetManagerMsg.Message> stubFleetManager() {
+        return Behaviors.receive(FleetManagerMsg.Message.class)
+            .onMessage(FleetManagerMsg.ProcessVehicleWotUpdate.class, message -> {
+                message.vehicleWotEventRef.tell(new VehicleEventMsg.EventComplete(message.vehicle, message.correlationId));
+                return Behaviors.same();
+            })
+            .build();
+    }
+
+    // The old way: a new actor per update, which forwards it, waits for the
+    // answer, replies and stops.
+    private static Behavior<VehicleEventMsg.Message> eventSpawner() {
+        return Behaviors.setup(context -> Behaviors.receive(VehicleEventMsg.Message.class)
+            .onMessage(VehicleEventMsg.EventFromWebP.class, message -> {
+                context.spawnAnonymous(oneShotEvent(message));
+                return Behaviors.same();
+            })
+            .build());
+    }
+
+    private static Behavior<VehicleEventMsg.Message> oneShotEvent(VehicleEventMsg.EventFromWebP event) {
+        return Behaviors.setup(context -> {
+            event.fleetManagerRef.tell(new FleetManagerMsg.ProcessVehicleWotUpdate(event.vehicle, context.getSelf(), 0));
+            return Behaviors.receive(VehicleEventMsg.Message.class)
+                .onMessage(VehicleEventMsg.EventComplete.class, message -> {
+                    event.replyTo.tell(new WebPortalMsg.VehicleToWebP(message.vehicle));
+                    return Behaviors.stopped();
+                })
+                .build();
+        });
+    }
+
+}
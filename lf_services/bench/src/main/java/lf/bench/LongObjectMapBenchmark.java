@@ -0,0 +1,86 @@
+package lf.bench;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import lf.core.LongObjectMap;
+
+/**
+ * LongObjectMap against the HashMap&lt;Long, V&gt; it replaced, on a fleet
+ * manager's access pattern: ids handed out in blocks, looked up by primitive
+ * id (hits and misses), and twins coming and going (remove + put).
+ * <p>
+ * Run with -prof gc to see the allocation the boxed keys cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongObjectMapBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private LongObjectMap<Object> longObjectMap;
+    private HashMap<Long, Object> hashMap;
+    private final Object value = new Object();
+
+    // Cycles through the ids (and the same number again, all misses).
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        longObjectMap = new LongObjectMap<Object>();
+        hashMap = new HashMap<Long, Object>();
+        for (long id = 1; id <= size; id++) {
+            longObjectMap.put(id, value);
+            hashMap.put(id, value);
+        }
+    }
+
+    private long nextId() {
+        next = (next == 2L * size) ? 1 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public Object getLongObjectMap() {
+        return longObjectMap.get(nextId());
+    }
+
+    @Benchmark
+    public Object getHashMap() {
+        return hashMap.get(nextId());
+    }
+
+    @Benchmark
+    public void churnLongObjectMap(Blackhole blackhole) {
+        long id = 1 + (nextId() % size);
+        blackhole.consume(longObjectMap.remove(id));
+        blackhole.consume(longObjectMap.put(id, value));
+    }
+
+    @Benchmark
+    public void churnHashMap(Blackhole blackhole) {
+        long id = 1 + (nextId() % size);
+        blackhole.consume(hashMap.remove(id));
+        blackhole.consume(hashMap.put(id, value));
+    }
+
+}
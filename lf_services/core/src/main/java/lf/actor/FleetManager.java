@@ -0,0 +1,677 @@
+package lf.actor;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.EntityRef;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import lf.core.LongObjectMap;
+import lf.core.RedisPool;
+import lf.core.VehicleIdSet;
+import lf.core.VehicleSnapshot;
+import lf.message.FleetManagerMsg;
+import lf.message.FleetManagerMsg.ChangeVehicleIds;
+import lf.message.FleetManagerMsg.GetVehicleJson;
+import lf.message.FleetManagerMsg.ListVehiclesJson;
+import lf.message.FleetManagerMsg.Message;
+import lf.message.FleetManagerMsg.ProcessVehicleWotUpdate;
+import lf.message.FleetManagerMsg.ProcessVehicleWotUpdateBatch;
+import lf.message.FleetManagerMsg.ProcessVehicleWebUpdate;
+import lf.message.FleetManagerMsg.RegistrationSuccess;
+import lf.message.FleetManagerMsg.StreamVehiclesAck;
+import lf.message.FleetManagerMsg.StreamVehiclesJson;
+import lf.message.FleetManagerMsg.VehicleSnapshotLoaded;
+import lf.message.FleetManagerMsg.VehicleStateChanged;
+import lf.message.FleetManagerMsg.VehicleTwinStopped;
+import lf.message.VehicleEventMsg;
+import lf.message.WebPortalMsg;
+import lf.model.Vehicle;
+import lf.model.VehicleListQuery;
+
+/**
+ * A Fleet Manager. Every fleet (Careless, Fastidious, ...) runs this same
+ * engine - what makes one fleet different from another is its configuration
+ * (@see FleetManagerGuardian, and "akka.fleet-manager.fleets"):
+ * <ul>
+ *  <li>name - the fleet's name (shown to web clients, and its twins' entity type)</li>
+ *  <li>vehicle-ids - the vehicles it owns, as ids and ranges (@see VehicleIdSet.parse)</li>
+ *  <li>and any of the "akka.fleet-manager" settings, overridden for this fleet
+ *      (list-chunk-size, list-stream-idle-timeout, hydration.*, twin.*,
+ *      write-behind.*, change-feed.*, sharding.shard-host-only) - except
+ *      blocking-io-dispatcher and metrics, which every fleet on the node shares</li>
+ * </ul>
+ * Managers share nothing, so one JVM can run as many fleets as it is given.
+ */
+public class FleetManager extends AbstractBehavior<Message> {
+
+    // MESSAGES:
+    //
+    // (Internal only - the rest are in FleetManagerMsg.)
+
+    // A streamed list the portal has stopped acking (its client went away).
+    private static final class ListStreamAbandoned implements Message {
+        public final String streamId;
+
+        public ListStreamAbandoned(String streamId) {
+            this.streamId = streamId;
+        }
+    }
+
+    // The Registry's answer to our proposed vehicle ids - or, if it didn't
+    // answer in time, why not (@see proposeNextIdChange).
+    private static final class IdChangeReviewed implements Message {
+        public final VehicleIdSet proposed;
+        public final String rejection;
+        public final boolean unanswered;
+
+        public IdChangeReviewed(VehicleIdSet proposed, String rejection, boolean unanswered) {
+            this.proposed = proposed;
+            this.rejection = rejection;
+            this.unanswered = unanswered;
+        }
+    }
+
+    // ENCAPSULATION:
+    public long MANAGER_ID; // The Registry assigns an ID on registration. Subject to change.
+
+    private final String fleetName;
+
+    // The vehicles that 'belong' in this fleet. Starts as configured, and may
+    // be changed while we run (@see ChangeVehicleIds). In a real system this
+    // would be persisted in a db...
+    private VehicleIdSet fleetIds;
+    // Changes to them, oldest first. Only the first is with the Registry -
+    // each is proposed from the ids the one before it left us with.
+    private final ArrayDeque<ChangeVehicleIds> idChanges = new ArrayDeque<ChangeVehicleIds>();
+    private final Duration idChangeTimeout;
+
+    public ActorRef<Registry.Message> REGISTRY_REF = null;
+
+    // Track the VehicleTwins we have "live". They are Cluster Sharding
+    // entities - spread over every node running this fleet - so all we hold is
+    // an EntityRef (routed via the shard region) per vehicle.
+    // ?!IF!? we had gotten the java WoT working - this may well have been WoT
+    // "consumed thing" that was ALSO an akka actor. That... would have been sweet.
+    // (Keyed on the primitive vehicle id - no boxing on the hot path.)
+    private final LongObjectMap<EntityRef<VehicleTwin.Message>> vehicles = new LongObjectMap<EntityRef<VehicleTwin.Message>>();
+    private final ClusterSharding sharding;
+    private final EntityTypeKey<VehicleTwin.Message> twinTypeKey;
+
+    // The latest state of every live vehicle, as pushed by its twin on each
+    // change. Vehicle list queries are answered straight from here. Sorted on
+    // id, so a page (cursor + limit) is a tailMap away.
+    private TreeMap<Long, Vehicle> fleetState = new TreeMap<Long, Vehicle>();
+    private final int listChunkSize;  // Vehicles per chunk of a streamed list.
+
+    // Streamed lists in progress (on their stream id): where each is up to,
+    // and where its chunks go. One chunk is out at a time (@see StreamVehiclesAck).
+    private static final class ListStream {
+        final ActorRef<WebPortalMsg.VehicleListChunkToWebP> portalRef;
+        long after = Long.MIN_VALUE;  // The last vehicle id sent.
+
+        ListStream(ActorRef<WebPortalMsg.VehicleListChunkToWebP> portalRef) {
+            this.portalRef = portalRef;
+        }
+    }
+    private final Map<String, ListStream> listStreams = new HashMap<String, ListStream>();
+    private final Duration listStreamIdleTimeout;
+
+    private final TimerScheduler<Message> timers;
+
+    // Write-behind stage shared by all of this manager's VehicleTwins. Batches
+    // their state changes into redis.
+    private final ActorRef<RedisWriteBehind.Message> redisWriter;
+
+    // Publishes the changes our twins report to the cluster (for the web
+    // portal's near cache).
+    private final ActorRef<VehicleChangeFeed.Message> changeFeed;
+
+    // Vehicle states preloaded from redis at startup. A twin is created from
+    // (and removes) its snapshot on first touch. 'hydrated' means the preload
+    // succeeded - so a vehicle missing here is not in the store at all.
+    private LongObjectMap<Vehicle> snapshots = new LongObjectMap<Vehicle>();
+    private boolean hydrated = false;
+
+    // CREATE THIS ACTOR
+    // To get access to the timers you start with Actor.withTimers that will pass
+    // a TimerScheduler instance to the function. This can be used with any type
+    // of Behavior, such as immutable or mutable.
+    // NOTE: 'fleetConfig' is this fleet's entry in "akka.fleet-manager.fleets".
+    public static Behavior<Message> create(Config fleetConfig) {
+        return Behaviors.withTimers(
+            timers -> {
+                return Behaviors.setup(
+                    // NOTE: Registration with the receptionist is deferred until
+                    //       the fleet's stored vehicles have been preloaded.
+                    context -> new FleetManager(fleetConfig, timers, context));
+                }
+            );
+    }
+
+    // ADD TO CONTEXT
+    protected FleetManager(Config fleetConfig, TimerScheduler<Message> timers, ActorContext<Message> context) {
+        super(context);
+
+        this.timers = timers;
+
+        // This fleet's settings, over the defaults every fleet shares.
+        Config config = fleetConfig.withFallback(
+            context.getSystem().settings().config().getConfig("akka.fleet-manager"));
+        this.fleetName = config.getString("name");
+        this.fleetIds = VehicleIdSet.parse(config.getString("vehicle-ids"));
+        this.listChunkSize = config.getInt("list-chunk-size");
+        this.listStreamIdleTimeout = config.getDuration("list-stream-idle-timeout");
+        this.idChangeTimeout = config.getDuration("vehicle-ids-change-timeout");
+        // The writer blocks on redis - keep it off the default dispatcher.
+        this.redisWriter = context.spawn(
+            RedisWriteBehind.create(config.getConfig("write-behind")), "redisWriteBehind",
+            DispatcherSelector.fromConfig("akka.fleet-manager.blocking-io-dispatcher"));
+        this.changeFeed = context.spawn(VehicleChangeFeed.create(config.getConfig("change-feed")), "vehicleChangeFeed");
+
+        // Join this fleet's shard region - twins may now be started here.
+        this.sharding = ClusterSharding.get(context.getSystem());
+        this.twinTypeKey = VehicleTwin.initSharding(
+            context.getSystem(), fleetName, redisWriter, config.getConfig("twin"));
+        if (config.getBoolean("sharding.shard-host-only")) {
+            // Only adding capacity to the shard region. Another node of this
+            // fleet registers (and so takes the traffic).
+            getContext().getLog().info("Hosting " + fleetName + " VehicleTwins only - not registering.");
+            return;
+        }
+
+        // Preload this fleet's stored vehicles (SCAN + pipelined MGET) before we
+        // register - and so before any vehicle traffic can reach us.
+        if (config.getBoolean("hydration.enabled")) {
+            int batchSize = config.getInt("hydration.batch-size");
+            Executor blockingIo = context.getSystem().dispatchers().lookup(
+                DispatcherSelector.fromConfig("akka.fleet-manager.blocking-io-dispatcher"));
+            RedisPool redisPool = RedisPool.get(context.getSystem());
+            context.pipeToSelf(
+                CompletableFuture.supplyAsync(
+                    () -> VehicleSnapshot.load(redisPool, fleetIds, batchSize), blockingIo),
+                (snapshot, failure) -> new VehicleSnapshotLoaded(snapshot, failure));
+        }
+        else {
+            register();
+        }
+    }
+
+    // =========================================================================
+
+    // MESSAGE HANDLING:
+    @Override
+    public Receive<Message> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(VehicleSnapshotLoaded.class, this::onVehicleSnapshotLoaded)
+                .onMessage(RegistrationSuccess.class, this::onRegistrationSuccess)
+                .onMessage(ProcessVehicleWotUpdate.class, this::onProcessVehicleWotUpdate)
+                .onMessage(ProcessVehicleWotUpdateBatch.class, this::onProcessVehicleWotUpdateBatch)
+                .onMessage(ProcessVehicleWebUpdate.class, this::onProcessVehicleWebUpdate)
+                .onMessage(ListVehiclesJson.class, this::onListVehiclesJson)
+                .onMessage(StreamVehiclesJson.class, this::onStreamVehiclesJson)
+                .onMessage(StreamVehiclesAck.class, this::onStreamVehiclesAck)
+                .onMessage(ListStreamAbandoned.class, this::onListStreamAbandoned)
+                .onMessage(GetVehicleJson.class, this::onGetVehicleJson)
+                .onMessage(VehicleStateChanged.class, this::onVehicleStateChanged)
+                .onMessage(VehicleTwinStopped.class, this::onVehicleTwinStopped)
+                .onMessage(ChangeVehicleIds.class, this::onChangeVehicleIds)
+                .onMessage(IdChangeReviewed.class, this::onIdChangeReviewed)
+                .build();
+    }
+
+    /**
+     * Register with the receptionist (the Registry will then find us).
+     */
+    private void register() {
+        getContext()
+            .getSystem()
+            .receptionist()
+            .tell(Receptionist.register(FleetManagerMsg.fleetManagerServiceKey, getContext().getSelf()));
+    }
+
+    /**
+     * Startup preload complete. Keep the snapshots, then register.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onVehicleSnapshotLoaded(VehicleSnapshotLoaded message) {
+        if (message.failure != null) {
+            // Not fatal - each twin will read its own state on first touch.
+            getContext().getLog().error("Vehicle preload from redis failed: " + message.failure.getLocalizedMessage());
+        }
+        else {
+            snapshots = message.snapshot;
+            hydrated = true;
+            getContext().getLog().info("Preloaded " + snapshots.size() + " vehicle(s) from redis.");
+        }
+        register();
+        return this;
+    }
+
+    private Behavior<Message> onRegistrationSuccess(RegistrationSuccess message) {
+        // Store the unique id assigned to this FleetManager. We'll need it if
+        // we want to 'DeRegister' on shutdown...
+        MANAGER_ID = message.mgrId;
+        REGISTRY_REF = message.registryRef;
+        getContext().getLog().debug("FleetManager Registration Confirmed.");
+
+        // Send manager name to registry
+        REGISTRY_REF.tell(new Registry.SetFleetManagerName(MANAGER_ID, fleetName));
+        // ... and the vehicles we own (so events for them are routed only to us)
+        REGISTRY_REF.tell(new Registry.SetFleetManagerIds(MANAGER_ID, fleetIds));
+        return this;
+    }
+
+    /**
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onProcessVehicleWotUpdate(ProcessVehicleWotUpdate message) {
+        if (applyWotUpdate(message.vehicle)) {
+            // We message the event handler immediately to say we're
+            // done. There's no confirmation etc.. Worst case - we lose one
+            // message and the client reporting is one transaction out of date.
+            // A real system might take a different approach here, depending
+            // on the designers goals.
+            message.vehicleWotEventRef.tell(new VehicleEventMsg.EventComplete(message.vehicle, message.correlationId));
+        }
+        else {
+            // Not ours (any more) - say so, rather than leave the caller waiting.
+            message.vehicleWotEventRef.tell(new VehicleEventMsg.EventComplete(null, message.correlationId));
+        }
+        return this;
+    }
+
+    /**
+     * A batch of WoT updates (from /wot/batch - grouped by the web portal so
+     * we get only our own). Each is applied as a single update would be, then
+     * one reply covers the lot.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onProcessVehicleWotUpdateBatch(ProcessVehicleWotUpdateBatch message) {
+        List<Vehicle> applied = new ArrayList<Vehicle>(message.vehicles.size());
+        for (Vehicle vehicle : message.vehicles) {
+            if (applyWotUpdate(vehicle)) {
+                applied.add(vehicle);
+            }
+        }
+        message.replyTo.tell(new WebPortalMsg.VehicleBatchToWebP(applied, message.vehicles.size() - applied.size()));
+        return this;
+    }
+
+    /**
+     * Hand one WoT update to its VehicleTwin (creating the twin on first
+     * contact).
+     *
+     * @param vehicle
+     * @return false if the vehicle isn't one of ours (it is ignored).
+     */
+    private boolean applyWotUpdate(Vehicle vehicle) {
+        // Each VehicleId is in the format 'WoT-ID-Mfr-VIN-nnnn' in our Toy system
+        // We extract the 'nnnn' (id) part to see if this vehicle belongs to this
+        // fleet manager:
+        long vehicleIdLong = vehicle.getVehicleIdLong();
+
+        if (vehicleIdLong != 0) {
+            if (fleetIds.contains(vehicleIdLong)) {
+                getContext().getLog().debug("Vehicle Event for " + fleetName + " Fleet received.");
+
+                // Is this the first communication for this vehicle?
+                if (vehicle.getFleetId().equalsIgnoreCase("not_defined")) {
+                    vehicle.setWotFltIdUpdateRqd(true);
+                }
+                // Why assume anything. Just stamp it with this fleetId every time.
+                vehicle.setFleetId(Long.toString(MANAGER_ID));
+
+                EntityRef<VehicleTwin.Message> vehicleTwinRef;
+
+                // First - if we haven't seen this vehicle yet, get an EntityRef
+                // for its VehicleTwin (sharding starts the twin - on whichever
+                // node owns its shard - on the first message):
+                if (!vehicles.containsKey(vehicleIdLong)) {
+                    vehicleTwinRef = sharding.entityRefFor(twinTypeKey, VehicleTwin.entityId(vehicleIdLong));
+                    vehicles.put(vehicleIdLong, vehicleTwinRef);
+                    // Hand over the preloaded state if we have it. If the preload
+                    // succeeded but has no entry, the vehicle is brand new.
+                    Vehicle snapshot = snapshots.remove(vehicleIdLong);
+                    boolean stored = (snapshot != null);
+                    if (snapshot == null && hydrated) {
+                        snapshot = Vehicle.createTemplate(vehicle.getVehicleId());
+                    }
+                    if (snapshot != null) {
+                        vehicleTwinRef.tell(new VehicleTwin.Hydrate(snapshot, stored));
+                        fleetState.put(vehicleIdLong, snapshot);
+                    }
+                } else {
+                    vehicleTwinRef = vehicles.get(vehicleIdLong);
+                }
+
+                // Update the VehicleTwin with the 'vehicle' pojo we have been
+                // sent
+                vehicleTwinRef.tell(new VehicleTwin.WotUpdate(vehicle, getContext().getSelf()));
+                return true;
+
+            } else {
+                getContext().getLog().info("Vehicle Event for non-fleet vehicle received ("
+                    + String.valueOf(vehicleIdLong) + "). Ignoring.");
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onProcessVehicleWebUpdate(ProcessVehicleWebUpdate message) {
+        // Each VehicleId is in the format 'WoT-ID-Mfr-VIN-nnnn' in our Toy system
+        // We extract the 'nnnn' (id) part to see if this vehicle belongs to this
+        // fleet manager:
+        Vehicle vehicle = message.vehicle;
+        long vehicleIdLong = vehicle.getVehicleIdLong();
+
+        if (vehicleIdLong != 0) {
+            if (fleetIds.contains(vehicleIdLong)) {
+                getContext().getLog().debug("Vehicle Event for " + fleetName + " Fleet received.");
+
+                // Is this the first communication for this vehicle?
+                if (vehicle.getFleetId().equalsIgnoreCase("not_defined")) {
+                    vehicle.setWotFltIdUpdateRqd(true);
+                }
+                // Why assume anything. Just stamp it with this fleetId every time.
+                vehicle.setFleetId(Long.toString(MANAGER_ID));
+
+                EntityRef<VehicleTwin.Message> vehicleTwinRef;
+
+                // First - if the VehicleTwin for this vehicle doesn't exist, then
+                // something has gone wrong. The client should only be able to
+                // modify the state on active vehicles. If we don't find the
+                // vehicle in our active actor list we return a failure message,
+                // in this case an empty vehicle object with the description set
+                // to a warning message.
+                if (!vehicles.containsKey(vehicleIdLong)) {
+                    vehicle.setVehicleId("ERROR: Vehicle Not Found. It may have been switched off...");
+                } else {
+                    vehicleTwinRef = vehicles.get(vehicleIdLong);
+
+                    // Ask the VehicleTwin to review the current update. If it
+                    // finds a changed value we support - it will update the
+                    // model AND attempt to change the state of the WoT using
+                    // the stored URI
+                    vehicleTwinRef.tell(new VehicleTwin.WebUpdate(vehicle, getContext().getSelf()));
+                }
+
+                // We message the event handler immediately to say we're
+                // done. There's no confirmation etc..
+                // On the client we inform the user the state change has been
+                // requested - to check for updates soon.
+                message.vehicleWebEventRef.tell(new VehicleEventMsg.EventComplete(vehicle, message.correlationId));
+
+                return this;
+            } else {
+                getContext().getLog().info("Vehicle Event for non-fleet vehicle received ("
+                            + String.valueOf(vehicleIdLong) + "). Ignoring.");
+            }
+        }
+
+        // Not ours (any more) - say so, rather than leave the caller waiting.
+        message.vehicleWebEventRef.tell(new VehicleEventMsg.EventComplete(null, message.correlationId));
+        return this;
+    }
+
+    /**
+     * One of our twins has applied a change. Keep it (for list queries) and
+     * pass it on to the change feed.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onVehicleStateChanged(VehicleStateChanged message) {
+        long vehicleIdLong = message.vehicle.getVehicleIdLong();
+        if (!fleetIds.contains(vehicleIdLong)) {
+            // A twin of a vehicle given up since (@see applyVehicleIds).
+            return this;
+        }
+        fleetState.put(vehicleIdLong, message.vehicle);
+        // A twin restarted by an update sent just before it told us it had
+        // stopped - it is live after all.
+        if (!vehicles.containsKey(vehicleIdLong)) {
+            vehicles.put(vehicleIdLong, sharding.entityRefFor(twinTypeKey, VehicleTwin.entityId(vehicleIdLong)));
+        }
+        changeFeed.tell(new VehicleChangeFeed.Changed(MANAGER_ID, message.vehicle));
+        return this;
+    }
+
+    /**
+     * One of our twins has been passivated. Forget the vehicle (so the maps
+     * here stay bounded too). If it reports again it gets a new twin, which
+     * reads its state back from redis - and reports it to us with its first
+     * update, changed or not.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onVehicleTwinStopped(VehicleTwinStopped message) {
+        vehicles.remove(message.vehicleId);
+        fleetState.remove(message.vehicleId);
+        // The preload no longer tells us which vehicles are NOT stored (this
+        // one is now) - so from here on, new twins read redis themselves.
+        hydrated = false;
+        return this;
+    }
+
+    /**
+     * Take on and/or give up vehicles while running. Nothing changes here
+     * until the Registry has accepted the new ids (@see onIdChangeReviewed).
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onChangeVehicleIds(ChangeVehicleIds message) {
+        if (REGISTRY_REF == null) {
+            message.portalRef.tell(new WebPortalMsg.VehicleIdsToWebP(
+                fleetIds.toString(), fleetName + " Fleet is not registered yet"));
+            return this;
+        }
+        idChanges.add(message);
+        if (idChanges.size() == 1) {
+            proposeNextIdChange();
+        }
+        return this;
+    }
+
+    /**
+     * Ask the Registry to take on the ids the oldest outstanding change
+     * would leave us with.
+     */
+    private void proposeNextIdChange() {
+        ChangeVehicleIds change = idChanges.peek();
+        VehicleIdSet proposed = fleetIds.union(change.added).difference(change.removed);
+        getContext().ask(
+            FleetManagerMsg.VehicleIdsReviewed.class,
+            REGISTRY_REF,
+            idChangeTimeout,
+            replyTo -> new Registry.ProposeFleetManagerIds(MANAGER_ID, proposed, replyTo),
+            (reviewed, failure) -> (failure == null)
+                ? new IdChangeReviewed(proposed, reviewed.rejection, false)
+                : new IdChangeReviewed(proposed, "The Registry did not answer: " + failure.getMessage(), true));
+    }
+
+    /**
+     * The Registry has accepted (and is already routing on) our proposed ids -
+     * or refused them, and we keep the ones we have. Either way, the portal is
+     * told, and the next change (if any) is proposed.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onIdChangeReviewed(IdChangeReviewed message) {
+        ChangeVehicleIds change = idChanges.poll();
+        if (message.rejection == null) {
+            applyVehicleIds(message.proposed);
+        }
+        else {
+            getContext().getLog().warn(fleetName + " Fleet vehicle id change refused: " + message.rejection);
+            if (message.unanswered) {
+                // It may have taken them on regardless - put it back on ours.
+                REGISTRY_REF.tell(new Registry.SetFleetManagerIds(MANAGER_ID, fleetIds));
+            }
+        }
+        change.portalRef.tell(new WebPortalMsg.VehicleIdsToWebP(fleetIds.toString(), message.rejection));
+
+        if (!idChanges.isEmpty()) {
+            proposeNextIdChange();
+        }
+        return this;
+    }
+
+    /**
+     * Own exactly 'newIds' from now on. Vehicles given up are forgotten here
+     * (their twins passivate once they stop hearing from us).
+     */
+    private void applyVehicleIds(VehicleIdSet newIds) {
+        VehicleIdSet added = newIds.difference(fleetIds);
+        VehicleIdSet removed = fleetIds.difference(newIds);
+        fleetIds = newIds;
+        getContext().getLog().info(fleetName + " Fleet now owns " + fleetIds.size() + " vehicle id(s): " + fleetIds);
+
+        if (!removed.isEmpty()) {
+            for (int run = 0; run < removed.runCount(); run++) {
+                fleetState.subMap(removed.low(run), true, removed.high(run), true).clear();
+            }
+            List<Long> given = new ArrayList<Long>();
+            vehicles.forEach((vehicleIdLong, twin) -> {
+                if (!fleetIds.contains(vehicleIdLong)) {
+                    given.add(vehicleIdLong);
+                }
+            });
+            given.forEach(vehicles::remove);
+            given.clear();
+            snapshots.forEach((vehicleIdLong, snapshot) -> {
+                if (!fleetIds.contains(vehicleIdLong)) {
+                    given.add(vehicleIdLong);
+                }
+            });
+            given.forEach(snapshots::remove);
+        }
+        // The preload didn't cover the vehicles just added - their twins read
+        // redis themselves.
+        if (!added.isEmpty()) {
+            hydrated = false;
+        }
+    }
+
+    /**
+     * Return a list of active registered vehicles in JSON format. Answered
+     * from the state the twins have pushed to us - no round-trip to the twins.
+     * Paging, filters and projection are applied here, so only what was asked
+     * for goes back over the cluster.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onListVehiclesJson(ListVehiclesJson message) {
+        VehicleListQuery.Page page = message.query.select(fleetState);
+        message.portalRef.tell(new WebPortalMsg.VehicleListToWebP(page.vehicles, page.nextAfter));
+        return this;
+    }
+
+    /**
+     * As onListVehiclesJson - but sent in chunks, each of which the web portal
+     * can write out as soon as it arrives. Only the first is sent now; the
+     * rest follow one per ack. A final, empty chunk ends the list.
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onStreamVehiclesJson(StreamVehiclesJson message) {
+        ListStream stream = new ListStream(message.portalRef);
+        listStreams.put(message.streamId, stream);
+        sendNextChunk(message.streamId, stream);
+        return this;
+    }
+
+    private Behavior<Message> onStreamVehiclesAck(StreamVehiclesAck message) {
+        ListStream stream = listStreams.get(message.streamId);
+        if (stream != null) {
+            sendNextChunk(message.streamId, stream);
+        }
+        return this;
+    }
+
+    private Behavior<Message> onListStreamAbandoned(ListStreamAbandoned message) {
+        listStreams.remove(message.streamId);
+        getContext().getLog().debug("Vehicle list stream " + message.streamId + " abandoned.");
+        return this;
+    }
+
+    /**
+     * Send the chunk following the last one sent. Picks up from the last id
+     * sent (rather than a copy of the list taken at the start), so a stream
+     * held back by a slow client costs us nothing but its cursor.
+     */
+    private void sendNextChunk(String streamId, ListStream stream) {
+        List<Vehicle> chunk = new ArrayList<Vehicle>(listChunkSize);
+        for (Vehicle vehicle : fleetState.tailMap(stream.after, false).values()) {
+            chunk.add(vehicle);
+            if (chunk.size() == listChunkSize) {
+                break;
+            }
+        }
+        if (chunk.isEmpty()) {
+            stream.portalRef.tell(new WebPortalMsg.VehicleListChunkToWebP(chunk, true));
+            listStreams.remove(streamId);
+            timers.cancel(streamId);
+            return;
+        }
+        stream.after = chunk.get(chunk.size() - 1).getVehicleIdLong();
+        stream.portalRef.tell(new WebPortalMsg.VehicleListChunkToWebP(chunk, false));
+        // (Re)started on every chunk: forget the stream if no ack comes back.
+        timers.startSingleTimer(streamId, new ListStreamAbandoned(streamId), listStreamIdleTimeout);
+    }
+
+    /**
+     * A single vehicle has been requested. Hand the request to its twin, which
+     * replies to the portal directly (no gathering here, no timer).
+     *
+     * @param message
+     * @return
+     */
+    private Behavior<Message> onGetVehicleJson(GetVehicleJson message) {
+        EntityRef<VehicleTwin.Message> vehicleTwinRef = vehicles.get(message.vehicleId);
+        if (vehicleTwinRef != null) {
+            vehicleTwinRef.tell(new VehicleTwin.GetVehicle(message.portalRef));
+        }
+        else {
+            // Not one of our (active) vehicles.
+            message.portalRef.tell(new WebPortalMsg.VehicleToWebP(null));
+        }
+        return this;
+    }
+
+}
@@ -1,16 +1,23 @@
 package lf.actor;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.typesafe.config.Config;
+
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.*;
-import jnr.ffi.annotations.IgnoreError;
 import lf.message.FleetManagerMsg.Message;
 import lf.message.LeetFServiceGuardianMsg.BootStrap;
 
 /**
- * The guardian is the top level actor that bootstraps the Registry application
+ * The guardian is the top level actor that bootstraps a fleet manager
+ * application. It spawns one FleetManager per fleet configured in
+ * "akka.fleet-manager.fleets" - so the same binary runs any fleet (or several
+ * at once), depending only on its configuration.
  */
-public class FleetlessGuardian extends AbstractBehavior<BootStrap> {
+public class FleetManagerGuardian extends AbstractBehavior<BootStrap> {
 
     // MESSAGES:
     //
@@ -19,14 +26,14 @@ public class FleetlessGuardian extends AbstractBehavior<BootStrap> {
     // For Service actors we make an exception - so startup logic can be shared.
 
     // ENCAPSULATION:
-    @IgnoreError  // Ignore unused error for fleetlessFleetManager - spawned but not referenced.
-    private final ActorRef<Message> fleetlessFleetManager;
+    // Spawned but not otherwise referenced (they find the Registry themselves).
+    private final List<ActorRef<Message>> fleetManagers = new ArrayList<ActorRef<Message>>();
 
     //=========================================================================
 
     // CREATE THIS ACTOR
     public static Behavior<BootStrap> create() {
-        return Behaviors.setup(FleetlessGuardian::new);
+        return Behaviors.setup(FleetManagerGuardian::new);
     }
 
     // ADD TO CONTEXT
@@ -35,12 +42,20 @@ public class FleetlessGuardian extends AbstractBehavior<BootStrap> {
     // Instead, you create Actor instances using factory spawn methods. Spawn
     // does not return an actor instance, but a reference (akka.actor.typed.ActorRef)
     // that points to the actor instance
-    private FleetlessGuardian(ActorContext<BootStrap> context) {
+    private FleetManagerGuardian(ActorContext<BootStrap> context) {
         super(context);
         //#create-actors
         // Spawning - location transparency - this actor could be anywhere in the cluster
-        fleetlessFleetManager = context.spawn(FleetlessFleetManager.create(), "fleetlessFleetManager");
+        List<? extends Config> fleets
+            = context.getSystem().settings().config().getConfigList("akka.fleet-manager.fleets");
+        for (Config fleetConfig : fleets) {
+            String fleetName = fleetConfig.getString("name");
+            fleetManagers.add(context.spawn(FleetManager.create(fleetConfig), "fleetManager" + fleetName));
+        }
         //#create-actors
+        if (fleetManagers.isEmpty()) {
+            context.getLog().warn("No fleets configured (akka.fleet-manager.fleets) - nothing to manage.");
+        }
     }
 
     //=========================================================================
@@ -54,7 +69,7 @@ public class FleetlessGuardian extends AbstractBehavior<BootStrap> {
     }
 
     private Behavior<BootStrap> onBootStrap(BootStrap message) {
-        getContext().getLog().info("Starting FleetManager for {}!", message.note);
+        getContext().getLog().info("Starting {} FleetManager(s) for {}!", fleetManagers.size(), message.note);
         return this;
     }
 }
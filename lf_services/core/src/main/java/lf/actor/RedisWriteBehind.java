@@ -0,0 +1,246 @@
+package lf.actor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.typesafe.config.Config;
+
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import lf.core.RedisPool;
+import lf.core.RedisPool.StorageLayout;
+import lf.model.Vehicle;
+import lf.model.VehicleCodec;
+import lf.model.VehicleFields;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.UnifiedJedis;
+
+/**
+ * Write-behind persistence stage for VehicleTwin state.
+ * <p>
+ * Twins tell this actor their latest state instead of writing to redis
+ * themselves. Dirty states are coalesced per "vehicle:&lt;id&gt;" key (the last
+ * update wins) and flushed with a single MSET when either:
+ * <ul>
+ *  <li>the buffer holds 'max-batch-size' distinct vehicles, or</li>
+ *  <li>'flush-interval' has passed since the first dirty state arrived</li>
+ * </ul>
+ * The size-or-time trigger is the same idea as the Buncher sample (careless).
+ * One FleetManager owns one writer.
+ * <p>
+ * With the HASH storage layout the twins also send the fields that changed.
+ * Those deltas are merged per key and flushed as pipelined HSETs, so only the
+ * changed fields ever go over the wire.
+ */
+public class RedisWriteBehind extends AbstractBehavior<RedisWriteBehind.Message> {
+
+    // MESSAGES:
+    //
+    public interface Message {
+    }
+
+    /**
+     * A VehicleTwin has new state that must (eventually) reach redis.
+     * NOTE: Local only - the writer is always a child of the FleetManager that
+     *       owns the twins, so this is never serialised.
+     */
+    public final static class Persist implements Message {
+        public final Vehicle vehicle;
+        // Fields changed since the last Persist for this vehicle (a null value
+        // means the field was cleared). Null if the whole vehicle must be
+        // written. Only used with the HASH storage layout.
+        public final Map<String, String> changedFields;
+
+        public Persist(Vehicle vehicle) {
+            this(vehicle, null);
+        }
+
+        public Persist(Vehicle vehicle, Map<String, String> changedFields) {
+            this.vehicle = vehicle;
+            this.changedFields = changedFields;
+        }
+    }
+
+    private enum Flush implements Message {
+        INSTANCE
+    }
+
+    // ENCAPSULATION:
+
+    private static final Object TIMER_KEY = new Object();
+
+    private final TimerScheduler<Message> timers;
+    private final RedisPool redisPool;
+    private final UnifiedJedis jedis;
+    private final VehicleCodec codec;
+    private final StorageLayout layout;
+
+    private final int maxBatchSize;
+    private final Duration flushInterval;
+
+    // Dirty vehicles, keyed on their redis key. Insertion ordered only to keep
+    // the MSET deterministic (handy when reading redis MONITOR output).
+    private final LinkedHashMap<String, Vehicle> dirty = new LinkedHashMap<String, Vehicle>();
+    // HASH layout only: the pending field changes for each dirty key.
+    private final LinkedHashMap<String, Map<String, String>> dirtyFields =
+        new LinkedHashMap<String, Map<String, String>>();
+
+    // CREATE THIS ACTOR
+    // NOTE: 'config' is the owning fleet's "write-behind" settings.
+    public static Behavior<Message> create(Config config) {
+        return Behaviors.withTimers(
+            timers -> Behaviors.setup(context -> new RedisWriteBehind(config, timers, context)));
+    }
+
+    // ADD TO CONTEXT
+    private RedisWriteBehind(Config config, TimerScheduler<Message> timers, ActorContext<Message> context) {
+        super(context);
+
+        this.timers = timers;
+        this.redisPool = RedisPool.get(context.getSystem());
+        this.jedis = redisPool.getJedis();
+        this.codec = redisPool.getVehicleCodec();
+        this.layout = redisPool.getStorageLayout();
+
+        this.maxBatchSize = config.getInt("max-batch-size");
+        this.flushInterval = config.getDuration("flush-interval");
+    }
+
+    // =========================================================================
+
+    // MESSAGE HANDLING:
+    @Override
+    public Receive<Message> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Persist.class, this::onPersist)
+                .onMessage(Flush.class, message -> onFlush())
+                .onSignal(PostStop.class, signal -> onPostStop())
+                .build();
+    }
+
+    private Behavior<Message> onPersist(Persist message) {
+        String key = "vehicle:" + message.vehicle.getVehicleIdLong();
+        // Repeated updates for the same vehicle simply replace the pending one.
+        dirty.put(key, message.vehicle);
+        if (layout == StorageLayout.HASH) {
+            // ... and their field changes accumulate (a later value for the
+            // same field wins). No delta means write every field.
+            Map<String, String> changes = (message.changedFields != null)
+                ? message.changedFields : VehicleFields.toFields(message.vehicle);
+            dirtyFields.computeIfAbsent(key, k -> new LinkedHashMap<String, String>()).putAll(changes);
+        }
+
+        if (dirty.size() >= maxBatchSize) {
+            timers.cancel(TIMER_KEY);
+            flush();
+        }
+        else if (!timers.isTimerActive(TIMER_KEY)) {
+            timers.startSingleTimer(TIMER_KEY, Flush.INSTANCE, flushInterval);
+        }
+        return this;
+    }
+
+    private Behavior<Message> onFlush() {
+        flush();
+        return this;
+    }
+
+    private Behavior<Message> onPostStop() {
+        // Don't lose the tail of the buffer when the FleetManager goes down.
+        flush();
+        return this;
+    }
+
+    /**
+     * Write every dirty vehicle to redis in one round-trip.
+     */
+    private void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        if (layout == StorageLayout.HASH) {
+            flushFields();
+            return;
+        }
+
+        byte[][] keysValues = new byte[dirty.size() * 2][];
+        int i = 0;
+        for (Map.Entry<String, Vehicle> entry : dirty.entrySet()) {
+            try {
+                keysValues[i + 1] = codec.encode(entry.getValue());
+                keysValues[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                i += 2;
+            }
+            catch (Exception e) {
+                getContext().getLog().error("Vehicle for Storage could not be marshalled (" + entry.getKey() + ")");
+            }
+        }
+
+        try {
+            if (i > 0) {
+                jedis.mset(i == keysValues.length ? keysValues : Arrays.copyOf(keysValues, i));
+            }
+            getContext().getLog().debug("Write-behind flushed " + (i / 2) + " vehicle(s) to redis");
+            dirty.clear();
+        }
+        catch (Exception e) {
+            // Keep the dirty set - it is bounded by the number of vehicles (one
+            // entry per key) - and try again on the next trigger.
+            getContext().getLog().error("Write-behind flush to redis failed: " + e.getLocalizedMessage());
+            if (!timers.isTimerActive(TIMER_KEY)) {
+                timers.startSingleTimer(TIMER_KEY, Flush.INSTANCE, flushInterval);
+            }
+        }
+    }
+
+    /**
+     * HASH layout: one HSET (and, for cleared fields, one HDEL) per dirty
+     * vehicle, all pipelined down a single connection.
+     */
+    private void flushFields() {
+        try (Connection connection = redisPool.getConnection();
+             Pipeline pipeline = new Pipeline(connection)) {
+            for (Map.Entry<String, Map<String, String>> entry : dirtyFields.entrySet()) {
+                Map<String, String> set = new LinkedHashMap<String, String>();
+                List<String> cleared = new ArrayList<String>();
+                for (Map.Entry<String, String> field : entry.getValue().entrySet()) {
+                    if (field.getValue() != null) {
+                        set.put(field.getKey(), field.getValue());
+                    }
+                    else {
+                        cleared.add(field.getKey());
+                    }
+                }
+                if (!set.isEmpty()) {
+                    pipeline.hset(entry.getKey(), set);
+                }
+                if (!cleared.isEmpty()) {
+                    pipeline.hdel(entry.getKey(), cleared.toArray(new String[0]));
+                }
+            }
+            pipeline.sync();
+            getContext().getLog().debug("Write-behind flushed " + dirtyFields.size() + " vehicle hash(es) to redis");
+            dirty.clear();
+            dirtyFields.clear();
+        }
+        catch (Exception e) {
+            // As above - keep the pending changes and try again later.
+            getContext().getLog().error("Write-behind flush to redis failed: " + e.getLocalizedMessage());
+            if (!timers.isTimerActive(TIMER_KEY)) {
+                timers.startSingleTimer(TIMER_KEY, Flush.INSTANCE, flushInterval);
+            }
+        }
+    }
+
+}
@@ -8,6 +8,10 @@ import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 import akka.actor.typed.receptionist.Receptionist;
 import akka.actor.typed.receptionist.ServiceKey;
+import lf.core.FleetRoutingIndex;
+import lf.core.FleetRoutingTable;
+import lf.core.LongObjectMap;
+import lf.core.VehicleIdSet;
 import lf.message.FleetManagerMsg;
 import lf.message.LFSerialisable;
 import lf.message.VehicleEventMsg;
@@ -67,15 +71,23 @@ public class Registry extends AbstractBehavior<Registry.Message> {
    * fleetId.</p>
    * <ul>
    *  <li>If the fleetId is valid - just the ref to the actor for that fleet is returned</li>
-   *  <li>If the fleetId is not valid/missing - all fleet manager actor refs are returned</li>
+   *  <li>If the fleetId is not valid/missing - the ref to the manager whose
+   *      (published) range owns the vehicleId is returned</li>
+   *  <li>If no published range owns the vehicleId - the refs of any managers
+   *      yet to publish a range are returned (usually none)</li>
    * </ul>
    */
   public final static class ListFleetMgrRefs implements Message, LFSerialisable {
     public final String fleetId;
+    public final long vehicleId;
+    public final long correlationId;  // Echoed back in the FleetMgrRefList.
     public final ActorRef<VehicleEventMsg.Message> vehicleEventHandlerRef;
 
-    public ListFleetMgrRefs(String fleetId, ActorRef<VehicleEventMsg.Message> vehicleEventHandlerRef) {
+    public ListFleetMgrRefs(String fleetId, long vehicleId, long correlationId,
+        ActorRef<VehicleEventMsg.Message> vehicleEventHandlerRef) {
       this.fleetId = fleetId;
+      this.vehicleId = vehicleId;
+      this.correlationId = correlationId;
       this.vehicleEventHandlerRef = vehicleEventHandlerRef;
     }
   }
@@ -93,6 +105,20 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     }
   }
 
+  /**
+   * The web portal subscribes for the routing table (manager refs + ranges) so
+   * it can route vehicle events itself - keeping this actor off the per-event
+   * path. The current table is sent on subscription and a new one on every
+   * change.
+   */
+  public final static class SubToRoutingTable implements Message, LFSerialisable {
+    public final ActorRef<FleetRoutingTable> subscriberRef;
+
+    public SubToRoutingTable(@JsonProperty("subscriberRef") ActorRef<FleetRoutingTable> subscriberRef) {
+      this.subscriberRef = subscriberRef;
+    }
+  }
+
   public final static class SetFleetManagerName implements Message, LFSerialisable {
     public final long managerId;
     public final String managerName;
@@ -104,6 +130,65 @@ public class Registry extends AbstractBehavior<Registry.Message> {
 
   }
 
+  /**
+   * Sent by each FleetManager on registration: the vehicle ids it owns. Used
+   * to route events for vehicles with no (valid) fleetId to their one owner.
+   */
+  public final static class SetFleetManagerIds implements Message, LFSerialisable {
+    public final long managerId;
+    public final VehicleIdSet vehicleIds;
+
+    public SetFleetManagerIds(
+        @JsonProperty("managerId") long managerId,
+        @JsonProperty("vehicleIds") VehicleIdSet vehicleIds) {
+      this.managerId = managerId;
+      this.vehicleIds = vehicleIds;
+    }
+  }
+
+  /**
+   * Change the vehicle ids a (running) fleet manager owns: forwarded to the
+   * manager (@see FleetManagerMsg.ChangeVehicleIds), which answers the
+   * portal. Answered here only if there is no such manager.
+   */
+  public final static class ChangeFleetVehicleIds implements Message, LFSerialisable {
+    public final long managerId;
+    public final VehicleIdSet added;
+    public final VehicleIdSet removed;
+    public final ActorRef<WebPortalMsg.VehicleIdsToWebP> portalRef;
+
+    public ChangeFleetVehicleIds(
+        @JsonProperty("managerId") long managerId,
+        @JsonProperty("added") VehicleIdSet added,
+        @JsonProperty("removed") VehicleIdSet removed,
+        @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleIdsToWebP> portalRef) {
+      this.managerId = managerId;
+      this.added = added;
+      this.removed = removed;
+      this.portalRef = portalRef;
+    }
+  }
+
+  /**
+   * A FleetManager's proposed new vehicle ids (@see ChangeFleetVehicleIds).
+   * Taken on - and routed on at once - unless they overlap another
+   * manager's; either way the manager is told, and only then applies them.
+   */
+  public final static class ProposeFleetManagerIds implements Message, LFSerialisable {
+    public final long managerId;
+    public final VehicleIdSet vehicleIds;
+    public final ActorRef<FleetManagerMsg.VehicleIdsReviewed> replyTo;
+
+    public ProposeFleetManagerIds(
+        @JsonProperty("managerId") long managerId,
+        @JsonProperty("vehicleIds") VehicleIdSet vehicleIds,
+        @JsonProperty("replyTo") ActorRef<FleetManagerMsg.VehicleIdsReviewed> replyTo) {
+      this.managerId = managerId;
+      this.vehicleIds = vehicleIds;
+      this.replyTo = replyTo;
+    }
+  }
+
   /**
    * Request for a list the registered fleet managers in JSON format.
    */
@@ -129,23 +214,42 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     }
   }
 
+  /**
+   * A routing table subscriber has gone (@see SubToRoutingTable).
+   */
+  private static class RoutingSubscriberTerminated implements Message {
+    final ActorRef<FleetRoutingTable> subscriberRef;
+
+    private RoutingSubscriberTerminated(ActorRef<FleetRoutingTable> subscriberRef) {
+      this.subscriberRef = subscriberRef;
+    }
+  }
+
   // ENCAPSULATION:
 
   private static long SEED_ID = 10000;
 
   // Track which id's map to which 'FleetManager Actor References' (as the manager
   // registrations can arrive in any order).
-  private static HashMap<Long, ActorRef<FleetManagerMsg.Message>> registry = new HashMap<Long, ActorRef<FleetManagerMsg.Message>>();
+  private static LongObjectMap<ActorRef<FleetManagerMsg.Message>> registry = new LongObjectMap<ActorRef<FleetManagerMsg.Message>>();
 
   // Encapsulating ActorRefs and names for each FleetManager in an class involves
   // some extra processing - we elected not to do that due to time constraints.
-  private static HashMap<Long, String> fleetManagerNames = new HashMap<Long, String>();
+  private static LongObjectMap<String> fleetManagerNames = new LongObjectMap<String>();
+
+  // The vehicle ids each FleetManager has published, and the interval
+  // index built from them (rebuilt whenever a set arrives or a manager goes).
+  private static LongObjectMap<VehicleIdSet> fleetManagerIds = new LongObjectMap<VehicleIdSet>();
+  private static FleetRoutingIndex routingIndex = FleetRoutingIndex.EMPTY;
 
   // The VehicleWeb query actor subscribes for fleet manager list updates. Keep
   // a reference to it. If (this) Registry actor dies, the receptionist will
   // notify the VehicleWebQuery actor (so it can resubscribe) on registry recovery.
   public ActorRef<VehicleWebQuery.Message> VEHICLE_WEB_QUERY_REF = null;
 
+  // Everyone routing vehicle events from their own copy of our state.
+  private final HashSet<ActorRef<FleetRoutingTable>> routingSubscribers = new HashSet<ActorRef<FleetRoutingTable>>();
+
   // We need an 'adaptor' - to convert the Receptionist Listing to one we
   // understand!!
   private final ActorRef<Receptionist.Listing> listingResponseAdapter;
@@ -190,7 +294,12 @@ public class Registry extends AbstractBehavior<Registry.Message> {
         .onMessage(ListFleetMgrRefs.class, this::onListFleetMgrRefs)
         .onMessage(ListFleetMgrsJson.class, this::onListFleetMgrsJson)
         .onMessage(SetFleetManagerName.class, this::onSetFleetManagerName)
+        .onMessage(SetFleetManagerIds.class, this::onSetFleetManagerIds)
+        .onMessage(ChangeFleetVehicleIds.class, this::onChangeFleetVehicleIds)
+        .onMessage(ProposeFleetManagerIds.class, this::onProposeFleetManagerIds)
         .onMessage(SubToFleetMgrList.class, this::onSubToFleetMgrList)
+        .onMessage(SubToRoutingTable.class, this::onSubToRoutingTable)
+        .onMessage(RoutingSubscriberTerminated.class, this::onRoutingSubscriberTerminated)
         .onMessage(ListingResponse.class, this::onListing)
         .build();
   }
@@ -210,13 +319,32 @@ public class Registry extends AbstractBehavior<Registry.Message> {
       getContext().getLog().info("Empty/Invalid FleetId Received - possible first connection?", nfe.getMessage());
     }
 
-    if (validFleetId) {
+    // A fleetId from before a manager restart (re-registration assigns a new
+    // id), or naming a manager that has since given the vehicle up, is no use
+    // - fall back to the vehicle id.
+    ActorRef<FleetManagerMsg.Message> fleetManagerRef = validFleetId ? registry.get(fleetId) : null;
+    if (fleetManagerRef != null && !FleetRoutingTable.stillOwns(fleetManagerIds.get(fleetId), message.vehicleId)) {
+      fleetManagerRef = null;
+    }
+    if (fleetManagerRef == null) {
+      fleetManagerRef = registry.get(routingIndex.ownerOf(message.vehicleId));
+    }
+
+    if (fleetManagerRef != null) {
       // We have to return a Collection - use the singletonList convenience...
       message.vehicleEventHandlerRef.tell(new VehicleEventMsg.FleetMgrRefList(
-          Collections.singletonList(registry.get(fleetId)), getContext().getSelf()));
+          Collections.singletonList(fleetManagerRef), getContext().getSelf(), message.correlationId));
     } else {
+      // No published range owns this vehicle. Only a manager that hasn't
+      // published its range yet (just registered) could.
+      ArrayList<ActorRef<FleetManagerMsg.Message>> unindexed = new ArrayList<ActorRef<FleetManagerMsg.Message>>();
+      registry.forEach((managerId, managerRef) -> {
+        if (!fleetManagerIds.containsKey(managerId)) {
+          unindexed.add(managerRef);
+        }
+      });
       message.vehicleEventHandlerRef
-          .tell(new VehicleEventMsg.FleetMgrRefList(registry.values(), getContext().getSelf()));
+          .tell(new VehicleEventMsg.FleetMgrRefList(unindexed, getContext().getSelf(), message.correlationId));
     }
 
     return this;
@@ -231,7 +359,7 @@ public class Registry extends AbstractBehavior<Registry.Message> {
   private Behavior<Message> onSubToFleetMgrList(SubToFleetMgrList message) {
     // Send an initial response with the current state of the registry on subscription
     message.vehicleWebQueryRef
-        .tell(new VehicleWebQuery.UpdatedFleetManagerList(registry));
+        .tell(new VehicleWebQuery.UpdatedFleetManagerList(registry.toHashMap()));
 
     if (VEHICLE_WEB_QUERY_REF == null) {
       VEHICLE_WEB_QUERY_REF = message.vehicleWebQueryRef;
@@ -240,6 +368,41 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     return this;
   }
 
+  /**
+   * Subscribe to the routing table (@see SubToRoutingTable).
+   *
+   * @param message
+   * @return
+   */
+  private Behavior<Message> onSubToRoutingTable(SubToRoutingTable message) {
+    if (routingSubscribers.add(message.subscriberRef)) {
+      getContext().watchWith(message.subscriberRef, new RoutingSubscriberTerminated(message.subscriberRef));
+    }
+    message.subscriberRef.tell(new FleetRoutingTable(registry.toHashMap(), fleetManagerIds.toHashMap()));
+
+    return this;
+  }
+
+  private Behavior<Message> onRoutingSubscriberTerminated(RoutingSubscriberTerminated message) {
+    routingSubscribers.remove(message.subscriberRef);
+
+    return this;
+  }
+
+  /**
+   * Send every routing subscriber the current table. Called whenever the
+   * manager list or the ranges change.
+   */
+  private void publishRoutingTable() {
+    if (routingSubscribers.isEmpty()) {
+      return;
+    }
+    FleetRoutingTable routingTable = new FleetRoutingTable(registry.toHashMap(), fleetManagerIds.toHashMap());
+    for (ActorRef<FleetRoutingTable> subscriberRef : routingSubscribers) {
+      subscriberRef.tell(routingTable);
+    }
+  }
+
   private Behavior<Message> onListFleetMgrsJson(ListFleetMgrsJson message) {
     // In reality we would have modelled fleet managers. In this toy system the
     // four managers are just hard coded.
@@ -248,9 +411,7 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     // Loop over the manager names now and generate the content for the manager
     // list..
     try {
-      for (Map.Entry<Long, String> man : fleetManagerNames.entrySet()) {
-        fleets.add(new Fleet(man.getValue(), Long.toString(man.getKey())));
-      }
+      fleetManagerNames.forEach((managerId, managerName) -> fleets.add(new Fleet(managerName, Long.toString(managerId))));
     } catch (Exception e) {
       getContext().getLog().error("", e);
     }
@@ -280,7 +441,7 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     // and assign an ID to them.
     fleetManagerServiceInstances.forEach(
         fleetManagerRef -> {
-          if (!registry.values().contains(fleetManagerRef)) {
+          if (!registry.containsValue(fleetManagerRef)) {
             // This is a new FleetManager reference - we want to add it.
             long newId = SEED_ID++;
             registry.put(newId, fleetManagerRef);
@@ -297,16 +458,19 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     // -> If actors currently present in the registry are missing from the received
     // Set that implies they have been removed - we need to remove them too!
     ArrayList<Long> deadFleetManagerKeys = new ArrayList<Long>();
-    for (Map.Entry<Long, ActorRef<FleetManagerMsg.Message>> registryEntry : registry.entrySet()) {
-      if (!fleetManagerServiceInstances.contains(registryEntry.getValue())) {
+    registry.forEach((managerId, managerRef) -> {
+      if (!fleetManagerServiceInstances.contains(managerRef)) {
         // This is an old FleetManager reference - we want to remove it.
         // Cannot modify a map while iterating over it.
-        deadFleetManagerKeys.add(registryEntry.getKey());
+        deadFleetManagerKeys.add(managerId);
       }
-    }
+    });
     for (Long key : deadFleetManagerKeys) {
       registry.remove(key);
       fleetManagerNames.remove(key);
+      if (fleetManagerIds.remove(key) != null) {
+        routingIndex = FleetRoutingIndex.of(fleetManagerIds.toHashMap());
+      }
       getContext().getLog().debug("(fleet manager ref removed from registry cache)");
       // The is no actor to inform that "FleetManager Has been De-registered"
       // as the actor is already gone.
@@ -318,8 +482,9 @@ public class Registry extends AbstractBehavior<Registry.Message> {
       getContext().getLog().info(
         "Registry received Fleet Manager List update - sending to subcriber (Vehicle_Web_Query Actor)"
         );
-      VEHICLE_WEB_QUERY_REF.tell(new VehicleWebQuery.UpdatedFleetManagerList(registry));
+      VEHICLE_WEB_QUERY_REF.tell(new VehicleWebQuery.UpdatedFleetManagerList(registry.toHashMap()));
     }
+    publishRoutingTable();
 
     return Behaviors.same();
   }
@@ -335,4 +500,80 @@ public class Registry extends AbstractBehavior<Registry.Message> {
     return this;
   }
 
+  /**
+   * A FleetManager has told us which vehicles it owns. Rebuild the index.
+   *
+   * @param message
+   * @return
+   */
+  private Behavior<Message> onSetFleetManagerIds(SetFleetManagerIds message) {
+    if (!registry.containsKey(message.managerId)) {
+      // Deregistered since it sent this.
+      return this;
+    }
+    String rejection = setVehicleIds(message.managerId, message.vehicleIds);
+    if (rejection != null) {
+      // Events for this manager's vehicles still reach it while it stays out
+      // of the index.
+      getContext().getLog().error("Rejected vehicle ids from fleet manager " + message.managerId + ": " + rejection);
+    }
+
+    return this;
+  }
+
+  /**
+   * Pass a change of vehicle ids on to the manager concerned.
+   *
+   * @param message
+   * @return
+   */
+  private Behavior<Message> onChangeFleetVehicleIds(ChangeFleetVehicleIds message) {
+    ActorRef<FleetManagerMsg.Message> fleetManagerRef = registry.get(message.managerId);
+    if (fleetManagerRef == null) {
+      message.portalRef.tell(new WebPortalMsg.VehicleIdsToWebP(null, "No fleet manager " + message.managerId));
+    } else {
+      fleetManagerRef.tell(new FleetManagerMsg.ChangeVehicleIds(message.added, message.removed, message.portalRef));
+    }
+
+    return this;
+  }
+
+  /**
+   * A FleetManager wants to change the vehicles it owns. Take the new ids on
+   * if they fit, and tell it whether they did.
+   *
+   * @param message
+   * @return
+   */
+  private Behavior<Message> onProposeFleetManagerIds(ProposeFleetManagerIds message) {
+    String rejection = registry.containsKey(message.managerId)
+        ? setVehicleIds(message.managerId, message.vehicleIds)
+        : "Fleet manager " + message.managerId + " is not registered";
+    message.replyTo.tell(new FleetManagerMsg.VehicleIdsReviewed(rejection));
+
+    return this;
+  }
+
+  /**
+   * Route on a manager's new vehicle ids - unless they overlap another
+   * manager's, in which case we keep routing on the ids we had.
+   *
+   * @return null if the ids were taken on, or why they were not.
+   */
+  private String setVehicleIds(long managerId, VehicleIdSet vehicleIds) {
+    VehicleIdSet previous = fleetManagerIds.put(managerId, vehicleIds);
+    try {
+      routingIndex = FleetRoutingIndex.of(fleetManagerIds.toHashMap());
+    } catch (IllegalArgumentException iae) {
+      if (previous != null) {
+        fleetManagerIds.put(managerId, previous);
+      } else {
+        fleetManagerIds.remove(managerId);
+      }
+      return iae.getMessage();
+    }
+    publishRoutingTable();
+    return null;
+  }
+
 }
@@ -0,0 +1,135 @@
+package lf.actor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.pubsub.Topic;
+import lf.message.WebPortalMsg;
+import lf.message.WebPortalMsg.VehicleChangesToWebP;
+import lf.model.Vehicle;
+
+/**
+ * Publishes a FleetManager's vehicle changes to the cluster (for the web
+ * portal's near cache).
+ * <p>
+ * The manager tells this actor every change its twins report. Changes are
+ * coalesced per vehicle (the latest state wins) and published as one
+ * VehicleChangesToWebP on the "vehicle-changes" topic when either
+ * 'max-batch-size' vehicles are pending or 'publish-interval' has passed -
+ * the same size-or-time trigger as RedisWriteBehind. One FleetManager owns one
+ * feed.
+ * <p>
+ * NOTE: Pub-sub delivery is at-most-once. Subscribers must bound how long they
+ *       trust what they have heard (the near cache has a staleness limit).
+ */
+public class VehicleChangeFeed extends AbstractBehavior<VehicleChangeFeed.Message> {
+
+    // MESSAGES:
+    //
+    public interface Message {
+    }
+
+    /**
+     * A vehicle in the given fleet has changed. Local only (the feed is always
+     * a child of the FleetManager).
+     */
+    public final static class Changed implements Message {
+        public final long fleetManagerId;
+        public final Vehicle vehicle;
+
+        public Changed(long fleetManagerId, Vehicle vehicle) {
+            this.fleetManagerId = fleetManagerId;
+            this.vehicle = vehicle;
+        }
+    }
+
+    private enum Publish implements Message {
+        INSTANCE
+    }
+
+    // ENCAPSULATION:
+
+    private static final Object TIMER_KEY = new Object();
+
+    private final TimerScheduler<Message> timers;
+    private final ActorRef<Topic.Command<VehicleChangesToWebP>> topic;
+
+    private final int maxBatchSize;
+    private final Duration publishInterval;
+
+    // The Registry assigns the manager id (and may change it) - so use
+    // whatever the most recent change was stamped with.
+    private long fleetManagerId;
+    private final LinkedHashMap<Long, Vehicle> pending = new LinkedHashMap<Long, Vehicle>();
+
+    // CREATE THIS ACTOR
+    // NOTE: 'config' is the owning fleet's "change-feed" settings.
+    public static Behavior<Message> create(Config config) {
+        return Behaviors.withTimers(
+            timers -> Behaviors.setup(context -> new VehicleChangeFeed(config, timers, context)));
+    }
+
+    // ADD TO CONTEXT
+    private VehicleChangeFeed(Config config, TimerScheduler<Message> timers, ActorContext<Message> context) {
+        super(context);
+
+        this.timers = timers;
+        // Every node spawns its own local topic actor with the same name; they
+        // find each other (via the receptionist) and form the cluster wide topic.
+        this.topic = context.spawn(
+            Topic.create(VehicleChangesToWebP.class, WebPortalMsg.VEHICLE_CHANGES_TOPIC), "vehicleChangesTopic");
+
+        this.maxBatchSize = config.getInt("max-batch-size");
+        this.publishInterval = config.getDuration("publish-interval");
+    }
+
+    // =========================================================================
+
+    // MESSAGE HANDLING:
+    @Override
+    public Receive<Message> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Changed.class, this::onChanged)
+                .onMessage(Publish.class, message -> onPublish())
+                .build();
+    }
+
+    private Behavior<Message> onChanged(Changed message) {
+        fleetManagerId = message.fleetManagerId;
+        pending.put(message.vehicle.getVehicleIdLong(), message.vehicle);
+
+        if (pending.size() >= maxBatchSize) {
+            timers.cancel(TIMER_KEY);
+            publish();
+        }
+        else if (!timers.isTimerActive(TIMER_KEY)) {
+            timers.startSingleTimer(TIMER_KEY, Publish.INSTANCE, publishInterval);
+        }
+        return this;
+    }
+
+    private Behavior<Message> onPublish() {
+        publish();
+        return this;
+    }
+
+    private void publish() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        topic.tell(Topic.publish(
+            new VehicleChangesToWebP(fleetManagerId, new ArrayList<Vehicle>(pending.values()))));
+        pending.clear();
+    }
+
+}
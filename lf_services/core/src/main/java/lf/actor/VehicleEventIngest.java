@@ -0,0 +1,237 @@
+package lf.actor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.PreRestart;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import lf.message.FleetManagerMsg;
+import lf.message.VehicleEventMsg;
+import lf.message.VehicleEventMsg.Message;
+import lf.core.LongObjectMap;
+import lf.message.WebPortalMsg;
+import lf.model.Vehicle;
+
+/**
+ * A long-lived vehicle event ingestion worker. The web portal runs a fixed pool
+ * of these (a consistent-hash router keyed on vehicle id) instead of spawning a
+ * one-shot event actor for every update. Handles both WoT updates (/wot) and
+ * web client updates (/web) - the event says which it is.
+ * <p>
+ * A worker has many events in flight at once. Each is given a correlation id,
+ * which travels to the FleetManager (and the Registry, if asked) and comes back
+ * in the reply - so the reply can be matched to the HTTP request waiting on it.
+ * All updates for a vehicle hash to the same worker, and a worker forwards in
+ * arrival order, so a FleetManager sees each vehicle's updates in order. That
+ * holds across the two ways an update can go (straight to its manager, or via
+ * the Registry): while a vehicle has a Registry lookup outstanding, its later
+ * updates queue up behind it (they go via the Registry too), so a direct
+ * update can't overtake one still being looked up.
+ * <p>
+ * Events nobody answers (a vehicle no manager owns) are dropped after
+ * 'pendingTimeout' - by then the HTTP ask has long failed. If the worker
+ * itself fails (and is restarted), or stops, its events in flight are
+ * answered with a null vehicle at once: their replies would come back to a
+ * worker that no longer knows them.
+ */
+public class VehicleEventIngest extends AbstractBehavior<VehicleEventMsg.Message> {
+
+  // MESSAGES:
+  // The shared VehicleEventMsg messages, plus:
+
+  private enum Sweep implements Message {
+    INSTANCE
+  }
+
+  // ENCAPSULATION:
+
+  private static final class Pending {
+    final Vehicle vehicle;
+    final VehicleEventMsg.Source source;
+    final ActorRef<WebPortalMsg.VehicleToWebP> portalRef;
+    final long receivedAt;  // System.nanoTime()
+    boolean awaitingRegistry = false;  // Sent via the Registry, not yet answered.
+    int awaitingManagers = 0;  // Sent to this many managers, not yet answered.
+
+    Pending(Vehicle vehicle, VehicleEventMsg.Source source, ActorRef<WebPortalMsg.VehicleToWebP> portalRef,
+        long receivedAt) {
+      this.vehicle = vehicle;
+      this.source = source;
+      this.portalRef = portalRef;
+      this.receivedAt = receivedAt;
+    }
+  }
+
+  private final long pendingTimeoutNanos;
+
+  // Events in flight, by correlation id. Ids are only unique per worker - the
+  // replies come straight back here.
+  private final HashMap<Long, Pending> pending = new HashMap<Long, Pending>();
+  private long nextCorrelationId = 1;
+
+  // Registry lookups outstanding, per vehicle id (@see onEventFromWebP).
+  private final LongObjectMap<Integer> registryLookups = new LongObjectMap<Integer>();
+
+  // CREATE THIS ACTOR
+  public static Behavior<Message> create(Duration pendingTimeout) {
+    return Behaviors.withTimers(
+        timers -> Behaviors.setup(context -> new VehicleEventIngest(timers, context, pendingTimeout)));
+  }
+
+  // ADD TO CONTEXT
+  private VehicleEventIngest(TimerScheduler<Message> timers, ActorContext<Message> context, Duration pendingTimeout) {
+    super(context);
+
+    this.pendingTimeoutNanos = pendingTimeout.toNanos();
+    timers.startTimerWithFixedDelay(Sweep.INSTANCE, pendingTimeout);
+  }
+
+  // =========================================================================
+
+  // MESSAGE HANDLING:
+
+  @Override
+  public Receive<Message> createReceive() {
+    return newReceiveBuilder()
+      .onMessage(VehicleEventMsg.EventFromWebP.class, this::onEventFromWebP)
+      .onMessage(VehicleEventMsg.FleetMgrRefList.class, this::onFleetManagerList)
+      .onMessage(VehicleEventMsg.EventComplete.class, this::onEventComplete)
+      .onMessage(Sweep.class, message -> onSweep())
+      .onSignal(PreRestart.class, signal -> onStopping())
+      .onSignal(PostStop.class, signal -> onStopping())
+      .build();
+  }
+
+  // From WebPortal
+
+  /**
+   * A vehicle update from the outside world. Send it to its FleetManager if the
+   * portal already knows which that is (and no earlier update for the vehicle
+   * is still being looked up), else ask the registry.
+   *
+   * @param message
+   * @return
+   */
+  private Behavior<Message> onEventFromWebP(VehicleEventMsg.EventFromWebP message) {
+    long correlationId = nextCorrelationId++;
+    Vehicle vehicle = message.vehicle;
+    Pending event = new Pending(vehicle, message.source, message.replyTo, System.nanoTime());
+    pending.put(correlationId, event);
+
+    long vehicleIdLong = vehicle.getVehicleIdLong();
+    Integer lookups = registryLookups.get(vehicleIdLong);
+    if (message.fleetManagerRef != null && lookups == null) {
+      event.awaitingManagers = 1;
+      message.fleetManagerRef.tell(toFleetManager(event, correlationId));
+    }
+    else if (message.registryRef != null) {
+      // The Registry answers us in order - so this goes out after any update
+      // for the vehicle it is still looking up.
+      event.awaitingRegistry = true;
+      registryLookups.put(vehicleIdLong, (lookups == null) ? 1 : lookups + 1);
+      message.registryRef.tell(
+        new Registry.ListFleetMgrRefs(vehicle.getFleetId(), vehicleIdLong, correlationId, getContext().getSelf()));
+    }
+    else {
+      // Routed, but queued behind a lookup we can't join. Don't reorder - fail it.
+      pending.remove(correlationId);
+      message.replyTo.tell(new WebPortalMsg.VehicleToWebP(null));
+    }
+    return this;
+  }
+
+  // A Registry lookup for the event is over (answered, or given up on).
+  private void registryLookupDone(Pending event) {
+    event.awaitingRegistry = false;
+    long vehicleIdLong = event.vehicle.getVehicleIdLong();
+    Integer lookups = registryLookups.get(vehicleIdLong);
+    if (lookups == null || lookups <= 1) {
+      registryLookups.remove(vehicleIdLong);
+    }
+    else {
+      registryLookups.put(vehicleIdLong, lookups - 1);
+    }
+  }
+
+  // From Registry
+
+  private Behavior<Message> onFleetManagerList(VehicleEventMsg.FleetMgrRefList message) {
+    Pending event = pending.get(message.correlationId);
+    if (event == null || !event.awaitingRegistry) {
+      return this;  // Already given up on.
+    }
+    registryLookupDone(event);
+    if (message.fleetManagerRefs.isEmpty()) {
+      // No manager owns the vehicle - nobody will answer.
+      pending.remove(message.correlationId);
+      event.portalRef.tell(new WebPortalMsg.VehicleToWebP(null));
+      return this;
+    }
+    event.awaitingManagers = message.fleetManagerRefs.size();
+    for (ActorRef<FleetManagerMsg.Message> fleetManagerRef : message.fleetManagerRefs) {
+      fleetManagerRef.tell(toFleetManager(event, message.correlationId));
+    }
+    return this;
+  }
+
+  private FleetManagerMsg.Message toFleetManager(Pending event, long correlationId) {
+    if (event.source == VehicleEventMsg.Source.WEB) {
+      return new FleetManagerMsg.ProcessVehicleWebUpdate(event.vehicle, getContext().getSelf(), correlationId);
+    }
+    return new FleetManagerMsg.ProcessVehicleWotUpdate(event.vehicle, getContext().getSelf(), correlationId);
+  }
+
+  // From FleetManager
+
+  private Behavior<Message> onEventComplete(VehicleEventMsg.EventComplete message) {
+    Pending event = pending.get(message.correlationId);
+    if (event == null) {
+      return this;
+    }
+    // A manager that doesn't own the vehicle answers with none. Wait for the
+    // others we sent it to (one of them may) - but not for the sweep.
+    if (message.vehicle == null && --event.awaitingManagers > 0) {
+      return this;
+    }
+    pending.remove(message.correlationId);
+    event.portalRef.tell(new WebPortalMsg.VehicleToWebP(message.vehicle));
+    return this;
+  }
+
+  private Behavior<Message> onSweep() {
+    long now = System.nanoTime();
+    Iterator<Pending> it = pending.values().iterator();
+    while (it.hasNext()) {
+      Pending event = it.next();
+      if (now - event.receivedAt > pendingTimeoutNanos) {
+        if (event.awaitingRegistry) {
+          registryLookupDone(event);
+        }
+        it.remove();
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Failing (to be restarted) or stopping: the events in flight are lost with
+   * this worker's state. Answer them now (a null vehicle) rather than leave
+   * each HTTP request to time out.
+   */
+  private Behavior<Message> onStopping() {
+    for (Pending event : pending.values()) {
+      event.portalRef.tell(new WebPortalMsg.VehicleToWebP(null));
+    }
+    pending.clear();
+    return this;
+  }
+
+}
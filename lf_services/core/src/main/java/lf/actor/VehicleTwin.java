@@ -7,26 +7,45 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.typesafe.config.Config;
 
 import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.cluster.sharding.typed.ClusterShardingSettings;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import lf.core.FleetMetrics;
+import lf.core.RedisPool;
+import lf.core.RedisPool.StorageLayout;
 import lf.message.FleetManagerMsg;
 import lf.message.LFSerialisable;
+import lf.message.WebPortalMsg;
 import lf.model.Vehicle;
-import redis.clients.jedis.HostAndPort;
+import lf.model.VehicleCodec;
+import lf.model.VehicleFields;
 import redis.clients.jedis.UnifiedJedis;
-import redis.clients.jedis.providers.PooledConnectionProvider;
 
+/**
+ * The twin of one vehicle. A Cluster Sharding entity (the entity id is the
+ * long vehicle id), so a fleet's twins are spread over every node running
+ * that fleet's manager - the manager only holds their EntityRefs.
+ */
 public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
 
     // MESSAGES:
@@ -34,110 +53,292 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
     public interface Message {
     }
 
+    /**
+     * NOTE: Updates name the FleetManager handling them. The twin reports its
+     *       state changes there (it may live on another node).
+     */
     public final static class WotUpdate implements Message, LFSerialisable {
         public final Vehicle vehicle;
-        public WotUpdate(Vehicle vehicle) {
+        public final ActorRef<FleetManagerMsg.Message> fleetManager;
+        public WotUpdate(
+            @JsonProperty("vehicle") Vehicle vehicle,
+            @JsonProperty("fleetManager") ActorRef<FleetManagerMsg.Message> fleetManager)
+        {
           this.vehicle = vehicle;
+          this.fleetManager = fleetManager;
         }
     }
 
     public final static class WebUpdate implements Message, LFSerialisable {
         public final Vehicle vehicle;
-        public WebUpdate(Vehicle vehicle) {
+        public final ActorRef<FleetManagerMsg.Message> fleetManager;
+        public WebUpdate(
+            @JsonProperty("vehicle") Vehicle vehicle,
+            @JsonProperty("fleetManager") ActorRef<FleetManagerMsg.Message> fleetManager)
+        {
           this.vehicle = vehicle;
+          this.fleetManager = fleetManager;
         }
     }
 
     /**
-     * Return a copy of the current vehicle state to the FleetManager
+     * This vehicle's state as preloaded by the FleetManager at startup. Sent
+     * ahead of the first update, so the twin needn't read redis itself.
+     * 'stored' is false for a brand new vehicle's template (which isn't in
+     * redis yet).
      */
-    public final static class RequestVehicleModel implements Message, LFSerialisable {
-        public long query_id;
-        public final ActorRef<FleetManagerMsg.Message> replyTo;
-        public RequestVehicleModel(
-            @JsonProperty("query_id") long query_id,
-            @JsonProperty("replyTo") ActorRef<FleetManagerMsg.Message> replyTo)
-        {
-            this.query_id = query_id;
+    public final static class Hydrate implements Message, LFSerialisable {
+        public final Vehicle snapshot;
+        public final boolean stored;
+        public Hydrate(@JsonProperty("snapshot") Vehicle snapshot, @JsonProperty("stored") boolean stored) {
+          this.snapshot = snapshot;
+          this.stored = stored;
+        }
+    }
+
+    /**
+     * Return a copy of the current vehicle state directly to the web portal
+     */
+    public final static class GetVehicle implements Message, LFSerialisable {
+        public final ActorRef<WebPortalMsg.VehicleToWebP> replyTo;
+        public GetVehicle(@JsonProperty("replyTo") ActorRef<WebPortalMsg.VehicleToWebP> replyTo) {
             this.replyTo = replyTo;
         }
     }
 
     public final static class GracefulShutdown implements Message, LFSerialisable {
         public final String note;
-        public GracefulShutdown(String note) {
+        public GracefulShutdown(@JsonProperty("note") String note) {
           this.note = note;
         }
     }
 
+    /**
+     * Read this vehicle from redis, unless its state has already arrived.
+     * Sent to self on start - so behind the message that started us. Internal.
+     */
+    private final static class StartHydration implements Message {
+        static final StartHydration INSTANCE = new StartHydration();
+        private StartHydration() {
+        }
+    }
+
+    /**
+     * Every WoT call queued so far has completed. Internal.
+     */
+    private final static class ExposedThingCallsDone implements Message {
+        static final ExposedThingCallsDone INSTANCE = new ExposedThingCallsDone();
+        private ExposedThingCallsDone() {
+        }
+    }
+
+    /**
+     * The (blocking) read of this vehicle from redis has completed. Internal.
+     */
+    private final static class HydrationComplete implements Message {
+        final String vehicleId;
+        final Vehicle stored;  // null if the vehicle was not in the store
+        final Throwable failure;
+        private HydrationComplete(String vehicleId, Vehicle stored, Throwable failure) {
+          this.vehicleId = vehicleId;
+          this.stored = stored;
+          this.failure = failure;
+        }
+    }
+
+    /**
+     * Apply the pending (conflated) WoT update. Sent to self. Internal.
+     */
+    private final static class ApplyPendingWotUpdate implements Message {
+        static final ApplyPendingWotUpdate INSTANCE = new ApplyPendingWotUpdate();
+        private ApplyPendingWotUpdate() {
+        }
+    }
+
+    /**
+     * A (blocking) call to the WoT Exposed Thing has completed. Internal.
+     */
+    private final static class ExposedThingResponse implements Message {
+        final String action;
+        final int responseCode;
+        final String body;
+        final Throwable failure;
+        private ExposedThingResponse(String action, int responseCode, String body, Throwable failure) {
+          this.action = action;
+          this.responseCode = responseCode;
+          this.body = body;
+          this.failure = failure;
+        }
+    }
+
     // ENCAPSULATION:
     // This is a compromise (storing a vehicle, inside the VehicleTwin). But for
     // this toy system it will suffice. The initial ideology (of a WoT consumed
     // thing, that was also an AKKA actor, living in the akka cluster would have
     // been fun to explore).
     private Vehicle vehicle;
+    // This vehicle as redis has it (read from, or last handed to the writer).
+    // Null if we don't know - e.g. a template never written. With the HASH
+    // layout writes are diffed against this, never against unstored state.
+    private Vehicle persisted = null;
     private UnifiedJedis jedis;
+    private StorageLayout storageLayout;
+    private final FleetMetrics metrics;
+
+    // State changes are handed to the FleetManager's write-behind stage, which
+    // batches them into redis (rather than a round-trip per update here).
+    private final ActorRef<RedisWriteBehind.Message> redisWriter;
+    // The manager that sent our latest update. Told about every applied change.
+    // (null until an update arrives - e.g. if a read started us.)
+    private ActorRef<FleetManagerMsg.Message> fleetManager = null;
+    private final long vehicleIdLong;
+    // Whether our manager holds our current state. A passivated twin's
+    // vehicle is dropped by its manager - so a twin (re)started from redis
+    // reports its state once, even if the first update changes nothing.
+    private boolean stateReported = false;
+    // Reads (GetVehicle) that arrived before we had any state - answered once
+    // our state has been read from redis (@see onHydrationComplete).
+    private final List<ActorRef<WebPortalMsg.VehicleToWebP>> waitingReads = new ArrayList<ActorRef<WebPortalMsg.VehicleToWebP>>();
+
+    // Redis reads and WoT HTTP calls block. They run on a dedicated dispatcher
+    // (never the default one) and report back to this twin as messages.
+    private final Executor blockingIo;
+    // Tail of this twin's chain of WoT calls. Chaining keeps them in order per
+    // vehicle, while the twin itself carries on processing updates.
+    private CompletableFuture<?> exposedThingCalls = CompletableFuture.completedFuture(null);
+
+    // WoT telemetry is last-writer-wins. A WoT update is only held here, and
+    // applied when our ApplyPendingWotUpdate (sent behind it) comes round. Any
+    // updates queued up in between just replace it - so a twin that has
+    // fallen behind applies one update per pass through its mailbox, however
+    // fast they arrive. Web updates (commands) are never conflated.
+    private final boolean conflateWotUpdates;
+    private Vehicle pendingWotUpdate = null;
 
     private char WDQ = 34;  // Double Quotes (decimal)
     //private char WDQ = '\u0022';  // Double Quotes (unicode)
 
+    // SHARDING
+    // Each fleet has its own entity type. Every node running that fleet's
+    // manager calls initSharding, so joins the fleet's shard region.
+    public static EntityTypeKey<Message> typeKey(String fleetName) {
+        return EntityTypeKey.create(Message.class, "VehicleTwin-" + fleetName);
+    }
+
+    /**
+     * Start this node's part of the fleet's shard region. Twins started here
+     * hand their writes to this node's 'redisWriter'.
+     * <p>
+     * Twins are passivated (sent a GracefulShutdown) when idle for
+     * 'idle-timeout', and - least recently used first - whenever this node
+     * holds more than 'max-active' of them. A later message simply starts
+     * the twin again (from redis).
+     * <p>
+     * 'config' is the fleet's "twin" settings.
+     */
+    public static EntityTypeKey<Message> initSharding(
+        ActorSystem<?> system, String fleetName, ActorRef<RedisWriteBehind.Message> redisWriter, Config config)
+    {
+        EntityTypeKey<Message> typeKey = typeKey(fleetName);
+        Config passivation = config.getConfig("passivation");
+        ClusterShardingSettings settings = ClusterShardingSettings.create(system)
+            // (PassivationStrategySettings is a Scala object - reached via MODULE$.)
+            .withPassivationStrategy(ClusterShardingSettings.PassivationStrategySettings$.MODULE$.defaults()
+                .withIdleEntityPassivation(passivation.getDuration("idle-timeout"))
+                .withActiveEntityLimit(passivation.getInt("max-active"))
+                .withLeastRecentlyUsedReplacement());
+        ClusterSharding.get(system).init(
+            Entity.of(typeKey, entityContext -> create(entityContext.getEntityId(), redisWriter, config))
+                .withStopMessage(new GracefulShutdown("Passivated"))
+                .withSettings(settings));
+        return typeKey;
+    }
+
+    public static String entityId(long vehicleIdLong) {
+        return Long.toString(vehicleIdLong);
+    }
+
     // CREATE THIS ACTOR
-    public static Behavior<Message> create(String vehicleId) {
-        return Behaviors.setup(
-                context -> new VehicleTwin(vehicleId, context));
+    // NOTE: 'entityId' is the long vehicle id (@see entityId), 'config' the
+    //       fleet's "twin" settings.
+    public static Behavior<Message> create(
+        String entityId, ActorRef<RedisWriteBehind.Message> redisWriter, Config config)
+    {
+        return Behaviors.setup(context -> new VehicleTwin(entityId, redisWriter, config, context));
     }
 
     // ADD TO CONTEXT
-    // NOTE: This constructor expects the 'WoT' String VehicleId.
-    private VehicleTwin(String vehicleId, ActorContext<Message> context) {
+    private VehicleTwin(
+        String entityId, ActorRef<RedisWriteBehind.Message> redisWriter, Config config,
+        ActorContext<Message> context)
+    {
         super(context);
 
-        // Interesting question... where will VehicleTwins get this information?
-        // Perhaps passed down from the WebPortal?
-
-        // Read the Redis setting from the System Config.
-        Config config = context.getSystem().settings().config().getConfig("akka.redis");
-        String redisHostname = config.getString("hostname");
-        int redisPort = config.getInt("port"); // Probably... 6379
+        this.redisWriter = redisWriter;
+        this.vehicleIdLong = Long.parseLong(entityId);
 
-        // We are doing one connection per VehicleTwin actor lifecycle - this is poor practice - address?
+        // All twins in this actor system share one (bounded) redis pool.
+        RedisPool redisPool = RedisPool.get(context.getSystem());
+        this.jedis = redisPool.getJedis();
+        this.storageLayout = redisPool.getStorageLayout();
+        this.metrics = FleetMetrics.get(context.getSystem());
+        this.blockingIo = context.getSystem().dispatchers().lookup(
+            DispatcherSelector.fromConfig("akka.fleet-manager.blocking-io-dispatcher"));
+        this.conflateWotUpdates = config.getBoolean("conflate-wot-updates");
 
-        // JedisPooled jedis = new JedisPooled("host.docker.internal", 6379);
-        // Protocol.DEFAULT_HOST redisHostname
-        HostAndPort hostAndPort = new HostAndPort(redisHostname, redisPort);
-        PooledConnectionProvider provider = new PooledConnectionProvider(hostAndPort);
-        this.jedis = new UnifiedJedis(provider);
-        // JedisPool pool = new JedisPool("localhost", 6379);
-        // jedis.set("clientName", "Jedis");
+        // The manager's preload (a Hydrate) may be the message that started us.
+        getContext().getSelf().tell(StartHydration.INSTANCE);
+    }
 
-        long vehicleIdLong = Vehicle.wotIdToLongId(vehicleId);
-        String key = "vehicle:" + vehicleIdLong;
-        // Check if the key exists in jedis...
-        if (jedis.exists(key)) {
-            // key exists, retrieve the object
-            //
-            try {
-                String vehicleAsJSON = jedis.get(key);
-                getContext().getLog().debug("\t value returned from redis -> " + vehicleAsJSON);
-                // Unmarshall the JSON into a Vehicle object using the Jackson object mapper
-                vehicle = new ObjectMapper().readValue(vehicleAsJSON, Vehicle.class);
-            }
-            catch (Exception e) {
-                getContext().getLog().error("Vehicle returned from Store could not be unmarshalled");
-            }
+    /**
+     * Nothing has given us our state yet - read any stored state, off the
+     * actor's thread. Updates that arrive in the meantime are processed as
+     * normal; reads wait for it (@see onHydrationComplete).
+     */
+    private Behavior<Message> onStartHydration(StartHydration message) {
+        if (vehicle != null || pendingWotUpdate != null) {
+            // Preloaded - or an update (newer than anything stored) is here.
+            return this;
         }
-        else {
-            try {
-                vehicle = Vehicle.createTemplate(vehicleId);
-                // Marshall the object using a Jackson object mapper
-                String vehicleAsJSON = new ObjectMapper().writeValueAsString(vehicle);
-                jedis.set(key, vehicleAsJSON);
-            }
-            catch (Exception e) {
-                getContext().getLog().error("Vehicle for Storage could not be marshalled");
-            }
+        String vehicleId = Vehicle.longIdToWotId(vehicleIdLong);
+        String key = "vehicle:" + vehicleIdLong;
+        getContext().pipeToSelf(
+            CompletableFuture.supplyAsync(() -> readVehicle(key), blockingIo),
+            (stored, failure) -> new HydrationComplete(vehicleId, stored, failure));
+        return this;
+    }
+
+    private Behavior<Message> onHydrate(Hydrate message) {
+        if (vehicle == null) {
+            // The manager has this state already - no need to report it.
+            vehicle = message.snapshot;
+            persisted = message.stored ? message.snapshot : null;
+            stateReported = true;
         }
+        return this;
+    }
 
+    /**
+     * Blocking read of a vehicle from the store. Runs on the blocking-io
+     * dispatcher - so no access to the actor context in here.
+     * @return The stored vehicle, or null if there isn't one.
+     */
+    private Vehicle readVehicle(String key) {
+        if (storageLayout == StorageLayout.HASH) {
+            Map<String, String> fields = jedis.hgetAll(key);
+            return fields.isEmpty() ? null : VehicleFields.fromFields(fields);
+        }
+        byte[] storedVehicle = jedis.get(key.getBytes(StandardCharsets.UTF_8));
+        if (storedVehicle == null) {
+            return null;
+        }
+        try {
+            // Binary or (older) JSON - the codec works out which.
+            return VehicleCodec.decodeAny(storedVehicle);
+        }
+        catch (Exception e) {
+            throw new CompletionException(e);
+        }
     }
 
     // =========================================================================
@@ -148,14 +349,91 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
     public Receive<Message> createReceive() {
         return newReceiveBuilder()
                 .onMessage(WotUpdate.class, this::onWotUpdate)
+                .onMessage(ApplyPendingWotUpdate.class, this::onApplyPendingWotUpdate)
+                .onMessage(Hydrate.class, this::onHydrate)
+                .onMessage(StartHydration.class, this::onStartHydration)
                 .onMessage(WebUpdate.class, this::onWebUpdate)
-                .onMessage(RequestVehicleModel.class, this::onRequestVehicleModel)
+                .onMessage(GetVehicle.class, this::onGetVehicle)
                 .onMessage(GracefulShutdown.class, this::onGracefulShutdown)
+                .onMessage(HydrationComplete.class, this::onHydrationComplete)
+                .onMessage(ExposedThingResponse.class, this::onExposedThingResponse)
                 .build();
     }
 
+    /**
+     * Stored state has been read from redis. If an update has already arrived
+     * it is newer than whatever was stored - so keep it.
+     */
+    private Behavior<Message> onHydrationComplete(HydrationComplete message) {
+        if (message.failure != null) {
+            getContext().getLog().error("Vehicle returned from Store could not be unmarshalled: "
+                + message.failure.getLocalizedMessage());
+        }
+        if (this.vehicle == null) {
+            if (message.stored != null) {
+                this.vehicle = message.stored;
+                this.persisted = message.stored;
+            }
+            else {
+                // Not in the store (or unreadable) - start from a template.
+                this.vehicle = Vehicle.createTemplate(message.vehicleId);
+                updateRedisModel();
+            }
+            // Our manager has no state for us until we tell it.
+            reportStateChanged();
+        }
+        answerWaitingReads();
+        return this;
+    }
+
     private Behavior<Message> onWotUpdate(WotUpdate message) {
-        Vehicle newState = message.vehicle;
+        fleetManager = message.fleetManager;
+        if (!conflateWotUpdates) {
+            applyWotUpdate(message.vehicle);
+            return this;
+        }
+        if (pendingWotUpdate != null) {
+            // Superseded before it was applied. A fleet id assignment it
+            // carried is a command though - it must not be lost with it.
+            metrics.updatesConflated.increment();
+            if (pendingWotUpdate.isWotFltIdUpdateRqd()) {
+                message.vehicle.setWotFltIdUpdateRqd(true);
+            }
+            pendingWotUpdate = message.vehicle;
+            return this;
+        }
+        pendingWotUpdate = message.vehicle;
+        getContext().getSelf().tell(ApplyPendingWotUpdate.INSTANCE);
+        return this;
+    }
+
+    private Behavior<Message> onApplyPendingWotUpdate(ApplyPendingWotUpdate message) {
+        applyPendingWotUpdate();
+        return this;
+    }
+
+    /**
+     * Apply the pending WoT update now (if there is one). Done before anything
+     * that must see - or follow - the latest state: web updates, reads and
+     * shutdown.
+     */
+    private void applyPendingWotUpdate() {
+        if (pendingWotUpdate != null) {
+            Vehicle newState = pendingWotUpdate;
+            pendingWotUpdate = null;
+            applyWotUpdate(newState);
+        }
+    }
+
+    private void applyWotUpdate(Vehicle newState) {
+        // The bridge re-posts the whole vehicle whenever anything is observed
+        // (heartbeats included). Nothing changed? Then there is nothing to do.
+        if (isUnchanged(newState)) {
+            metrics.updatesSuppressed.increment();
+            reportStateIfUnreported();
+            return;
+        }
+        metrics.updatesApplied.increment();
 
         // If this is a brand new actor... then this.vehicle will be null at this point
         newState = updateExposedThing(newState);
@@ -165,10 +443,9 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
         this.vehicle = newState;
 
         // ... then update the REDIS model
-        updateRedisModel(this.vehicle.getVehicleIdLong());
+        updateRedisModel();
+        reportStateChanged();
         // Toy system - no action take if key does not exist.
-
-        return this;
     }
 
     /**
@@ -176,8 +453,19 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
      * in redis and request a change to WoT by calling the WoT URL directly.
      */
     private Behavior<Message> onWebUpdate(WebUpdate message) {
+        // The command applies on top of everything received before it.
+        applyPendingWotUpdate();
+        fleetManager = message.fleetManager;
+
         Vehicle newState = message.vehicle;
 
+        if (isUnchanged(newState)) {
+            metrics.updatesSuppressed.increment();
+            reportStateIfUnreported();
+            return this;
+        }
+        metrics.updatesApplied.increment();
+
         newState = updateExposedThing(newState);
 
         // Update the vehicle in this actor (we just completely overwrite state.
@@ -185,12 +473,38 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
         this.vehicle = newState;
 
         // ... then update the REDIS model
-        updateRedisModel(this.vehicle.getVehicleIdLong());
+        updateRedisModel();
+        reportStateChanged();
         // Toy system - no action take if key does not exist.
 
         return this;
     }
 
+    private void reportStateChanged() {
+        if (fleetManager != null) {
+            fleetManager.tell(new FleetManagerMsg.VehicleStateChanged(vehicle));
+            stateReported = true;
+        }
+    }
+
+    // E.g. state read from redis before any manager had sent us an update.
+    private void reportStateIfUnreported() {
+        if (!stateReported) {
+            reportStateChanged();
+        }
+    }
+
+    /**
+     * Change detection: true if newState is exactly the state we already hold -
+     * i.e. applying it would write the same value to redis and trigger no WoT
+     * action. Checked before any I/O; the callers count the outcome.
+     * NOTE: A pending fleet id update (wotFltIdUpdateRqd) is never a no-op - the
+     *       held state always has that flag cleared.
+     */
+    private boolean isUnchanged(Vehicle newState) {
+        return vehicle != null && vehicle.equals(newState);
+    }
+
     /**
      * We can receive vehicle state messages from the WoT or from the web Client.
      * Those state messages might include a request to update the state of the WoT
@@ -220,14 +534,17 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
                 URL url = new URL(urlAsString);
                 String method = "PUT";
                 String requestBody = WDQ + newState.getFleetId() + WDQ;  // JSON value must be quote delimited
-                setWoTPropertyDirectly(url, method, requestBody);
+                getContext().getLog().debug("** requestBody for transmission is:" + requestBody);
+                callExposedThing("Fleet ID Update", url, method, requestBody);
             }
             catch (IOException ioe) {
                 getContext().getLog().error("Fleet ID Update failure: " + ioe.getLocalizedMessage());
             }
         }
         // LOCK /UNLOCK DOORS:
-        if (vehicle != null && !vehicle.getDoorStatus().equals(newState.getDoorStatus())) {
+        // (A state read from a partly written hash may have no door status.)
+        if (vehicle != null && newState.getDoorStatus() != null
+                && !newState.getDoorStatus().equals(vehicle.getDoorStatus())) {
             // Update the WoT Exposed Thing
             // We are not proud. We planned to do this on a java WoT object.
             // But this approach will suffice for the toy system:
@@ -248,7 +565,7 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
                 getContext().getLog().debug("URL to for Door State Toggle is -> " + urlAsString);
                 URL url = new URL(urlAsString);
                 String method = "POST";
-                setWoTPropertyDirectly(url, method, null);
+                callExposedThing("Door Lock Toggle", url, method, null);
 
             }
             catch (IOException ioe) {
@@ -260,13 +577,41 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
     }
 
     /**
-     * Call the appropriate action URL on the WoT object directly
+     * Queue a call to the WoT object on the blocking-io dispatcher. Calls for
+     * this vehicle run one after another, in the order they were requested.
+     * The outcome comes back as an ExposedThingResponse message.
+     */
+    private void callExposedThing(String action, URL url, String method, String requestBody) {
+        CompletableFuture<ExposedThingResponse> call = exposedThingCalls.handleAsync(
+            (previous, previousFailure) -> {
+                try {
+                    return setWoTPropertyDirectly(action, url, method, requestBody);
+                }
+                catch (IOException ioe) {
+                    throw new CompletionException(ioe);
+                }
+            },
+            blockingIo);
+        // The chain must never 'fail' - or every later call would be skipped.
+        exposedThingCalls = call.handle((response, failure) -> null);
+
+        getContext().pipeToSelf(call,
+            (response, failure) -> (failure == null)
+                ? response
+                : new ExposedThingResponse(action, 0, null, failure));
+    }
+
+    /**
+     * Call the appropriate action URL on the WoT object directly.
+     * NOTE: Blocking. Runs on the blocking-io dispatcher - so no access to the
+     *       actor context (or its logger) in here.
      *
      * @param url
      * @throws IOException
      * @throws ProtocolException
      */
-    private void setWoTPropertyDirectly(URL url, String method, String requestBody)
+    private static ExposedThingResponse setWoTPropertyDirectly(
+        String action, URL url, String method, String requestBody)
     throws IOException, ProtocolException
     {
         // Create a HttpURLConnection with the URL object - a new connection is
@@ -277,8 +622,6 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
         // We send using method="POST" for actions, method="PUT" for setting properties.
         con.setRequestMethod(method);
         if (requestBody != null) {
-            getContext().getLog().debug("** requestBody for transmission is:" + requestBody);
-
             // Enable output on the connection so we can write the JSON payload.
             con.setDoOutput(true);
 
@@ -293,13 +636,9 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
                 // Only the outputStream is closed at this point, not the actual connection
                 os.close();
             }
-            catch (Exception e) {
-                getContext().getLog().error("Failed writing output stream to WoT: " + e.getLocalizedMessage());
-            }
         }
 
         int responseCode = con.getResponseCode();
-        getContext().getLog().debug("Response Code from Exposed Thing was: " + responseCode);
 
         String line;
         StringBuffer response = new StringBuffer();
@@ -313,7 +652,6 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
 
         // if there is a response code AND that response code is an OK '200' range code, do stuff...
         if (successCodes.contains(responseCode)) {
-            getContext().getLog().debug("Response Code was HTTP_OK!!");
             // We don't really do much with the response content. But logging it
             // can be informative.
             BufferedReader inStrm = new BufferedReader(new InputStreamReader(con.getInputStream()));
@@ -323,59 +661,110 @@ public class VehicleTwin extends AbstractBehavior<VehicleTwin.Message> {
             inStrm.close();
         }
         else {
-            // Exposed Thing returned HTTP error code - log it:
-            getContext().getLog().error("Attempt to access Exposed Thing over HTTP Failed.");
+            // Exposed Thing returned HTTP error code - return it for logging:
             BufferedReader errStrm = new BufferedReader(new InputStreamReader(con.getErrorStream()));
             while ((line = errStrm.readLine()) != null) {
                 response.append(line);
             }
             errStrm.close();
         }
-        getContext().getLog().debug("Response Body: " + response.toString());
+        return new ExposedThingResponse(action, responseCode, response.toString(), null);
+    }
+
+    /**
+     * A WoT call has completed (back on the actor's thread - so log away).
+     */
+    private Behavior<Message> onExposedThingResponse(ExposedThingResponse message) {
+        if (message.failure != null) {
+            getContext().getLog().error(message.action + " failure: " + message.failure.getLocalizedMessage());
+        }
+        else if (message.responseCode >= 200 && message.responseCode < 300) {
+            getContext().getLog().debug("Response Code from Exposed Thing was: " + message.responseCode);
+            getContext().getLog().debug("Response Body: " + message.body);
+        }
+        else {
+            getContext().getLog().error("Attempt to access Exposed Thing over HTTP Failed ("
+                + message.action + ", Response Code: " + message.responseCode + ").");
+            getContext().getLog().debug("Response Body: " + message.body);
+        }
+        return this;
     }
 
     // Graceful shutdown:
-    // ??? SCHEDULE THIS?? DRIVEN BY SOMETHING ELSE????
+    // Sent by sharding when it passivates us - idle too long, or evicted to
+    // keep the node under its twin limit (@see initSharding).
     private Behavior<Message> onGracefulShutdown(GracefulShutdown message) {
-        getContext().getSystem().log().info("Initiating graceful shutdown...");
+        getContext().getLog().debug("VehicleTwin " + vehicleIdLong + " stopping (" + message.note + ")");
 
-        // Shut down our redis connection...
-        jedis.close();
+        // Flush: our last state goes to the write-behind stage (which outlives
+        // us) - and our manager forgets us.
+        applyPendingWotUpdate();
+        if (fleetManager != null) {
+            fleetManager.tell(new FleetManagerMsg.VehicleTwinStopped(vehicleIdLong));
+        }
+        // Don't leave a reader to time out - it gets whatever we have.
+        answerWaitingReads();
+
+        // NOTE: The redis pool is shared by every twin (and closed with the
+        //       actor system) - do not close it here.
 
-        // Here it can perform graceful stop (possibly asynchronous) and when completed
-        // return `Behaviors.stopped()` here or after receiving another message.
-        return Behaviors.stopped();
+        if (exposedThingCalls.isDone()) {
+            return Behaviors.stopped();
+        }
+        // Let our queued WoT calls finish (and their outcome be logged) first.
+        // Sharding holds any new messages for us until we have stopped.
+        getContext().pipeToSelf(exposedThingCalls, (result, failure) -> ExposedThingCallsDone.INSTANCE);
+        return Behaviors.receive(Message.class)
+            .onMessage(ExposedThingResponse.class, response -> {
+                onExposedThingResponse(response);
+                return Behaviors.same();
+            })
+            .onMessage(ExposedThingCallsDone.class, done -> Behaviors.stopped())
+            .build();
     }
 
     /**
-     * Update the redis store with the current values in the vehicle model
-     * @param vehicleIdLong
+     * Queue the current values in the vehicle model for the redis store. The
+     * write-behind stage coalesces and batches the actual writes.
+     * With the HASH layout only the fields that differ from what redis holds
+     * are sent - every field if we don't know what it holds (@see persisted).
      */
-    private void updateRedisModel(long vehicleIdLong) {
-        // Update the redis store...
-        String key = "vehicle:" + vehicleIdLong;
-        // Check if the key exists in jedis...
-        if (jedis.exists(key)) {
-            try {
-                // Marshall the object using a Jackson object mapper
-                String vehicleAsJSON = new ObjectMapper().writeValueAsString(vehicle);
-                jedis.set(key, vehicleAsJSON);
-            }
-            catch (Exception e) {
-                getContext().getLog().error("Vehicle returned from Store could not be unmarshalled");
+    private void updateRedisModel() {
+        if (storageLayout == StorageLayout.HASH && persisted != null) {
+            Map<String, String> changedFields = VehicleFields.diff(persisted, vehicle);
+            if (!changedFields.isEmpty()) {
+                redisWriter.tell(new RedisWriteBehind.Persist(vehicle, changedFields));
             }
         }
+        else {
+            redisWriter.tell(new RedisWriteBehind.Persist(vehicle));
+        }
+        persisted = vehicle;
     }
 
     /**
-     * When a copy of the vehicle model is requested, supply it!
-     * @param message
-     * @return
+     * A single vehicle has been requested (from the web portal). Reply to it
+     * directly - there is nothing for the FleetManager to gather.
+     * NOTE: A twin (re)started by the read itself - e.g. after passivation -
+     *       has no state until it has read redis. The read waits for that
+     *       (rather than answer null, which the portal treats as not found).
      */
-    private Behavior<Message> onRequestVehicleModel(RequestVehicleModel message) {
-        getContext().getLog().debug("Vehicle response to state query (query ID: " + message.query_id + ")");
-        message.replyTo.tell(new FleetManagerMsg.VehicleModelResponse(message.query_id, this.vehicle));
+    private Behavior<Message> onGetVehicle(GetVehicle message) {
+        applyPendingWotUpdate();
+        if (this.vehicle == null) {
+            // Our hydration is under way (or StartHydration is still queued).
+            waitingReads.add(message.replyTo);
+            return this;
+        }
+        message.replyTo.tell(new WebPortalMsg.VehicleToWebP(this.vehicle));
         return this;
     }
 
+    private void answerWaitingReads() {
+        for (ActorRef<WebPortalMsg.VehicleToWebP> replyTo : waitingReads) {
+            replyTo.tell(new WebPortalMsg.VehicleToWebP(this.vehicle));
+        }
+        waitingReads.clear();
+    }
+
 }
\ No newline at end of file
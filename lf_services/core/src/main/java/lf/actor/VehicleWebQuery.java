@@ -11,6 +11,7 @@ import akka.actor.typed.receptionist.ServiceKey;
 import lf.message.FleetManagerMsg;
 import lf.message.LFSerialisable;
 import lf.message.WebPortalMsg;
+import lf.model.VehicleListQuery;
 
 import java.util.*;
 
@@ -46,13 +47,70 @@ public class VehicleWebQuery extends AbstractBehavior<VehicleWebQuery.Message> {
   */
   public final static class ListVehiclesJson implements Message, LFSerialisable {
     public final long fleetManagerId;
+    public final VehicleListQuery query;
     public final ActorRef<WebPortalMsg.VehicleListToWebP> portalRef;
 
     public ListVehiclesJson(
       @JsonProperty("fleetManagerId") long fleetManagerId,
+      @JsonProperty("query") VehicleListQuery query,
       @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleListToWebP> portalRef)
     {
       this.fleetManagerId = fleetManagerId;
+      this.query = query;
+      this.portalRef = portalRef;
+    }
+  }
+
+  /**
+  * Request for a (chunked) stream of all active vehicles for a fleet manager.
+  */
+  public final static class StreamVehiclesJson implements Message, LFSerialisable {
+    public final long fleetManagerId;
+    public final String streamId;
+    public final ActorRef<WebPortalMsg.VehicleListChunkToWebP> portalRef;
+
+    public StreamVehiclesJson(
+      @JsonProperty("fleetManagerId") long fleetManagerId,
+      @JsonProperty("streamId") String streamId,
+      @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleListChunkToWebP> portalRef)
+    {
+      this.fleetManagerId = fleetManagerId;
+      this.streamId = streamId;
+      this.portalRef = portalRef;
+    }
+  }
+
+  /**
+  * The portal is ready for the next chunk of a streamed list.
+  */
+  public final static class StreamVehiclesAck implements Message, LFSerialisable {
+    public final long fleetManagerId;
+    public final String streamId;
+
+    public StreamVehiclesAck(
+      @JsonProperty("fleetManagerId") long fleetManagerId,
+      @JsonProperty("streamId") String streamId)
+    {
+      this.fleetManagerId = fleetManagerId;
+      this.streamId = streamId;
+    }
+  }
+
+  /**
+  * Request for a single vehicle from a fleet manager in JSON format.
+  */
+  public final static class GetVehicleJson implements Message, LFSerialisable {
+    public final long fleetManagerId;
+    public final long vehicleId;
+    public final ActorRef<WebPortalMsg.VehicleToWebP> portalRef;
+
+    public GetVehicleJson(
+      @JsonProperty("fleetManagerId") long fleetManagerId,
+      @JsonProperty("vehicleId") long vehicleId,
+      @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleToWebP> portalRef)
+    {
+      this.fleetManagerId = fleetManagerId;
+      this.vehicleId = vehicleId;
       this.portalRef = portalRef;
     }
   }
@@ -134,6 +192,9 @@ public class VehicleWebQuery extends AbstractBehavior<VehicleWebQuery.Message> {
         .onMessage(ListingResponse.class, this::onListing)
         .onMessage(UpdatedFleetManagerList.class, this::onUpdatedFleetManagerList)
         .onMessage(ListVehiclesJson.class, this::onListVehiclesJson)
+        .onMessage(StreamVehiclesJson.class, this::onStreamVehiclesJson)
+        .onMessage(StreamVehiclesAck.class, this::onStreamVehiclesAck)
+        .onMessage(GetVehicleJson.class, this::onGetVehicleJson)
         .build();
   }
 
@@ -198,7 +259,7 @@ public class VehicleWebQuery extends AbstractBehavior<VehicleWebQuery.Message> {
     // Do a null check just in case an invalidId was received.
     if (managerRef != null) {
       getContext().getLog().debug("In onListVehiclesJson : Valid managerRef retrieved");
-      managerRef.tell(new FleetManagerMsg.ListVehiclesJson(msg.portalRef));
+      managerRef.tell(new FleetManagerMsg.ListVehiclesJson(msg.query, msg.portalRef));
     }
     else {
       // Should we send an empty list with a message here!
@@ -208,4 +269,61 @@ public class VehicleWebQuery extends AbstractBehavior<VehicleWebQuery.Message> {
     return Behaviors.same();
   }
 
+  /**
+   * Pass a single vehicle request to its fleet manager (which hands it to the
+   * twin, which replies to the portal directly).
+   * @param msg
+   * @return
+   */
+  private Behavior<Message> onGetVehicleJson(GetVehicleJson msg) {
+    ActorRef<FleetManagerMsg.Message> managerRef = registryMirror.get(msg.fleetManagerId);
+    if (managerRef != null) {
+      managerRef.tell(new FleetManagerMsg.GetVehicleJson(msg.vehicleId, msg.portalRef));
+    }
+    else {
+      // Answer 'not found' now rather than leave the portal to time out.
+      getContext().getLog().error("In onGetVehicleJson : No managerRef retrieved");
+      msg.portalRef.tell(new WebPortalMsg.VehicleToWebP(null));
+    }
+
+    return Behaviors.same();
+  }
+
+  /**
+   * As onListVehiclesJson, but the manager streams the list back in chunks.
+   * @param msg
+   * @return
+   */
+  private Behavior<Message> onStreamVehiclesJson(StreamVehiclesJson msg) {
+    ActorRef<FleetManagerMsg.Message> managerRef = registryMirror.get(msg.fleetManagerId);
+    if (managerRef != null) {
+      managerRef.tell(new FleetManagerMsg.StreamVehiclesJson(msg.streamId, msg.portalRef));
+    }
+    else {
+      // End the (empty) stream now rather than leave the client waiting.
+      getContext().getLog().error("In onStreamVehiclesJson : No managerRef retrieved");
+      msg.portalRef.tell(new WebPortalMsg.VehicleListChunkToWebP(new ArrayList<>(), true));
+    }
+
+    return Behaviors.same();
+  }
+
+  /**
+   * Pass the portal's ack for a streamed list chunk on to its manager.
+   * @param msg
+   * @return
+   */
+  private Behavior<Message> onStreamVehiclesAck(StreamVehiclesAck msg) {
+    ActorRef<FleetManagerMsg.Message> managerRef = registryMirror.get(msg.fleetManagerId);
+    if (managerRef != null) {
+      managerRef.tell(new FleetManagerMsg.StreamVehiclesAck(msg.streamId));
+    }
+    else {
+      // The manager has gone mid-stream: the portal times the stream out.
+      getContext().getLog().error("In onStreamVehiclesAck : No managerRef retrieved");
+    }
+
+    return Behaviors.same();
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package lf.core;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+/**
+ * Counters shared by every actor in the system (one set per actor system, as
+ * for RedisPool). Actors just bump them - LongAdders, so thousands of twins
+ * can count at once without contending. The totals are logged every
+ * "akka.fleet-manager.metrics.log-interval" (0 turns the logging off).
+ */
+public class FleetMetrics implements Extension {
+
+    // VehicleTwin updates that were applied (state changed).
+    public final LongAdder updatesApplied = new LongAdder();
+    // VehicleTwin updates that were dropped, unchanged, before any I/O.
+    public final LongAdder updatesSuppressed = new LongAdder();
+    // VehicleTwin WoT updates replaced by a newer one before being applied.
+    public final LongAdder updatesConflated = new LongAdder();
+
+    public static class Id extends ExtensionId<FleetMetrics> {
+
+        private static final Id instance = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public FleetMetrics createExtension(ActorSystem<?> system) {
+            return new FleetMetrics(system);
+        }
+
+        public static FleetMetrics get(ActorSystem<?> system) {
+            return instance.apply(system);
+        }
+    }
+
+    public static FleetMetrics get(ActorSystem<?> system) {
+        return Id.get(system);
+    }
+
+    private FleetMetrics(ActorSystem<?> system) {
+        Duration logInterval = system.settings().config().getDuration("akka.fleet-manager.metrics.log-interval");
+        if (!logInterval.isZero()) {
+            system.scheduler().scheduleAtFixedRate(
+                logInterval, logInterval, () -> system.log().info(toString()), system.executionContext());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FleetMetrics: updates applied: " + updatesApplied.sum()
+            + ", updates suppressed (unchanged): " + updatesSuppressed.sum()
+            + ", updates conflated (superseded): " + updatesConflated.sum();
+    }
+
+}
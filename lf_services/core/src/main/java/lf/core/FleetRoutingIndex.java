@@ -0,0 +1,99 @@
+package lf.core;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Which FleetManager owns which vehicle ids: an interval index over the
+ * VehicleIdSet each manager publishes on registration (and on any change).
+ * <p>
+ * Every run of every manager's set is held in three parallel arrays sorted on
+ * the low end, so finding the owner of a vehicle id is one binary search (the
+ * last run starting at or below the id) and one bounds check - no matter how
+ * many managers, or runs, there are. Sets may not overlap: any id has at most
+ * one owner.
+ * <p>
+ * Immutable. To change the ranges, build a new index.
+ */
+public final class FleetRoutingIndex {
+
+    public static final long NO_OWNER = -1;
+
+    public static final FleetRoutingIndex EMPTY = new FleetRoutingIndex(new long[0], new long[0], new long[0]);
+
+    private final long[] lows;      // Sorted, ascending.
+    private final long[] highs;     // highs[i] belongs to lows[i] (inclusive).
+    private final long[] owners;    // The manager id owning [lows[i], highs[i]].
+
+    private FleetRoutingIndex(long[] lows, long[] highs, long[] owners) {
+        this.lows = lows;
+        this.highs = highs;
+        this.owners = owners;
+    }
+
+    /**
+     * Build an index from each manager's vehicle ids.
+     *
+     * @param ranges Manager id to the set of vehicle ids it owns.
+     * @throws IllegalArgumentException If two managers' sets overlap.
+     */
+    public static FleetRoutingIndex of(Map<Long, VehicleIdSet> ranges) {
+        // Every run, as (low, high, owner), sorted on low.
+        int size = 0;
+        for (VehicleIdSet ids : ranges.values()) {
+            size += ids.runCount();
+        }
+        long[][] runs = new long[size][];
+        int n = 0;
+        for (Map.Entry<Long, VehicleIdSet> entry : ranges.entrySet()) {
+            VehicleIdSet ids = entry.getValue();
+            for (int run = 0; run < ids.runCount(); run++) {
+                runs[n++] = new long[] { ids.low(run), ids.high(run), entry.getKey() };
+            }
+        }
+        Arrays.sort(runs, (a, b) -> Long.compare(a[0], b[0]));
+
+        long[] lows = new long[size];
+        long[] highs = new long[size];
+        long[] owners = new long[size];
+        for (int i = 0; i < size; i++) {
+            // (A set's own runs never overlap - so this is another manager.)
+            if (i > 0 && runs[i][0] <= highs[i - 1]) {
+                throw new IllegalArgumentException("Vehicle ids of manager " + runs[i][2]
+                    + " overlap those of manager " + owners[i - 1]);
+            }
+            lows[i] = runs[i][0];
+            highs[i] = runs[i][1];
+            owners[i] = runs[i][2];
+        }
+        return new FleetRoutingIndex(lows, highs, owners);
+    }
+
+    /**
+     * @return The id of the manager owning this vehicle id, or NO_OWNER.
+     */
+    public long ownerOf(long vehicleId) {
+        int low = 0;
+        int high = lows.length - 1;
+        int candidate = -1;  // Last range starting at or below vehicleId.
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lows[mid] <= vehicleId) {
+                candidate = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        if (candidate < 0 || vehicleId > highs[candidate]) {
+            return NO_OWNER;
+        }
+        return owners[candidate];
+    }
+
+    public int size() {
+        return lows.length;
+    }
+
+}
@@ -0,0 +1,74 @@
+package lf.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import akka.actor.typed.ActorRef;
+import lf.message.FleetManagerMsg;
+import lf.message.LFSerialisable;
+import lf.model.Vehicle;
+
+/**
+ * A snapshot of everything needed to route a vehicle event to its
+ * FleetManager: the registered manager refs and the vehicle ids each
+ * owns. Published by the Registry to its routing subscribers (the web portal)
+ * whenever either changes, so they can route without asking the Registry
+ * about every message.
+ * <p>
+ * Immutable - a change is a new table. The interval index is rebuilt on
+ * arrival (it isn't sent over the wire).
+ */
+public final class FleetRoutingTable implements LFSerialisable {
+
+    public static final FleetRoutingTable EMPTY = new FleetRoutingTable(
+        new HashMap<Long, ActorRef<FleetManagerMsg.Message>>(), new HashMap<Long, VehicleIdSet>());
+
+    public final Map<Long, ActorRef<FleetManagerMsg.Message>> fleetManagerRefs;
+    public final Map<Long, VehicleIdSet> fleetManagerIds;
+
+    private final FleetRoutingIndex index;
+
+    public FleetRoutingTable(
+        @JsonProperty("fleetManagerRefs") Map<Long, ActorRef<FleetManagerMsg.Message>> fleetManagerRefs,
+        @JsonProperty("fleetManagerIds") Map<Long, VehicleIdSet> fleetManagerIds)
+    {
+        this.fleetManagerRefs = Collections.unmodifiableMap(new HashMap<Long, ActorRef<FleetManagerMsg.Message>>(fleetManagerRefs));
+        this.fleetManagerIds = Collections.unmodifiableMap(new HashMap<Long, VehicleIdSet>(fleetManagerIds));
+        this.index = FleetRoutingIndex.of(this.fleetManagerIds);
+    }
+
+    /**
+     * The manager a vehicle event should go to: the one named by the vehicle's
+     * fleetId if that is (still) registered and (still) owns the vehicle, else
+     * the one owning its id.
+     *
+     * @return The manager ref, or null if no registered manager owns it.
+     */
+    public ActorRef<FleetManagerMsg.Message> route(Vehicle vehicle) {
+        long vehicleIdLong = vehicle.getVehicleIdLong();
+        try {
+            long fleetManagerId = Long.parseLong(vehicle.getFleetId());
+            ActorRef<FleetManagerMsg.Message> fleetManagerRef = fleetManagerRefs.get(fleetManagerId);
+            if (fleetManagerRef != null && stillOwns(fleetManagerIds.get(fleetManagerId), vehicleIdLong)) {
+                return fleetManagerRef;
+            }
+        } catch (NumberFormatException nfe) {
+            // "not_defined" (first contact) or garbage - route on the id.
+        }
+        return fleetManagerRefs.get(index.ownerOf(vehicleIdLong));
+    }
+
+    /**
+     * Whether a manager named by a vehicle's fleetId should still get its
+     * events. Its ids may have changed since it stamped the vehicle (@see
+     * FleetManagerMsg.ChangeVehicleIds). A manager yet to publish its ids
+     * ('vehicleIds' null) is trusted.
+     */
+    public static boolean stillOwns(VehicleIdSet vehicleIds, long vehicleIdLong) {
+        return vehicleIds == null || vehicleIds.contains(vehicleIdLong);
+    }
+
+}
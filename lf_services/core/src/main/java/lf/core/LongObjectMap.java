@@ -0,0 +1,263 @@
+package lf.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A map from primitive long keys (vehicle ids, manager ids) to objects.
+ * <p>
+ * A HashMap&lt;Long, V&gt; boxes every key and allocates a node per entry -
+ * with 100k twins per node that is tens of MB, and garbage on every lookup
+ * by a primitive id. Here the keys and values live in two parallel arrays
+ * (open addressing, linear probing), so an entry costs one long and one
+ * reference, and get/put/remove allocate nothing.
+ * <p>
+ * Removal shifts later entries of the probe run back (no tombstones), so a
+ * map with a lot of churn doesn't degrade. Null values are not allowed - get
+ * returns null for 'absent'.
+ * <p>
+ * Not thread safe (an actor's own state). Don't modify it from forEach.
+ */
+public final class LongObjectMap<V> {
+
+    /**
+     * Receives each entry (@see forEach).
+     */
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private static final long FREE = 0;            // Marks an empty slot...
+    private static final int MIN_CAPACITY = 16;
+    private static final float MAX_LOAD = 0.6f;    // Linear probing degrades beyond this.
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;         // 64 - log2(capacity), for the hash.
+    private int size;
+    private int resizeAt;
+
+    // ... so key 0 is held on the side.
+    private boolean hasFreeKey;
+    private Object freeKeyValue;
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Entries to hold without resizing.
+     */
+    public LongObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @return A copy of 'map' (which must not contain null keys or values).
+     */
+    public static <V> LongObjectMap<V> copyOf(Map<Long, ? extends V> map) {
+        LongObjectMap<V> copy = new LongObjectMap<V>(map.size());
+        for (Map.Entry<Long, ? extends V> entry : map.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    // Fibonacci hashing: spreads sequential ids (the common case) evenly.
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    // The slot holding 'key', or -1.
+    private int find(long key) {
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == FREE) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return (key == FREE) ? hasFreeKey : find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE) {
+            return (V) freeKeyValue;
+        }
+        int i = find(key);
+        return (i < 0) ? null : (V) values[i];
+    }
+
+    /**
+     * @return The value 'key' had, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        if (key == FREE) {
+            V previous = (V) freeKeyValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            if (k == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeAt) {
+                    resize(keys.length << 1);
+                }
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * @return The value 'key' had, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return null;
+            }
+            V previous = (V) freeKeyValue;
+            hasFreeKey = false;
+            freeKeyValue = null;
+            size--;
+            return previous;
+        }
+        int gap = find(key);
+        if (gap < 0) {
+            return null;
+        }
+        V previous = (V) values[gap];
+        size--;
+
+        // Close the gap: move back any later entry of this probe run that
+        // could not otherwise be found from its home slot.
+        int i = (gap + 1) & mask;
+        while (keys[i] != FREE) {
+            int home = slot(keys[i]);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        return previous;
+    }
+
+    public boolean containsValue(Object value) {
+        if (hasFreeKey && freeKeyValue.equals(value)) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE && values[i].equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        hasFreeKey = false;
+        freeKeyValue = null;
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        if (hasFreeKey) {
+            visitor.visit(FREE, (V) freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    public List<V> values() {
+        List<V> list = new ArrayList<V>(size);
+        forEach((key, value) -> list.add(value));
+        return list;
+    }
+
+    /**
+     * @return A (boxed) copy - for messages and APIs that take a Map.
+     */
+    public HashMap<Long, V> toHashMap() {
+        HashMap<Long, V> map = new HashMap<Long, V>(Math.max(16, (int) (size / 0.75f) + 1));
+        forEach((key, value) -> map.put(key, value));
+        return map;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != FREE) {
+                int i = slot(key);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+}
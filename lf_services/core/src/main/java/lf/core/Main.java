@@ -1,8 +1,11 @@
 package lf.core;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+
+import com.typesafe.config.ConfigFactory;
 
 import lf.model.Vehicle;
+import lf.model.VehicleCodec;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.UnifiedJedis;
 
@@ -24,6 +27,11 @@ public class Main  {
 
         String vehicleId = "WoT-ID-Mfr-VIN-1234";
 
+        // Stored vehicles may be binary or JSON - read (and write) them the
+        // same way the VehicleTwins do (@see VehicleCodec).
+        VehicleCodec vehicleCodec = VehicleCodec.forName(
+            ConfigFactory.load().getString("akka.redis.vehicle-codec"));
+
         Vehicle vehicle;
 
         long vehicleIdLong = Vehicle.wotIdToLongId(vehicleId);
@@ -34,10 +42,10 @@ public class Main  {
             //
             //vehicle = (Vehicle) jedis.jsonGet(key);
             System.out.println("JEDIS KJEY EXISTS BLOCK ################################################");
-            String vehicleAsJSON = jedis.get(key);
-            System.out.println("\t value returned from redis -> " + vehicleAsJSON);
+            byte[] storedVehicle = jedis.get(key.getBytes(StandardCharsets.UTF_8));
+            System.out.println("\t value returned from redis -> " + storedVehicle.length + " bytes");
             try {
-                vehicle = new ObjectMapper().readValue(vehicleAsJSON, Vehicle.class);
+                vehicle = VehicleCodec.decodeAny(storedVehicle);
                 //vehicle = new Gson().fromJson(vehicleAsJSON, Vehicle.class);
                 System.out.println("\t Test Attribute -> " + vehicle.getVehicleId());
             }
@@ -47,9 +55,8 @@ public class Main  {
         } else {
             vehicle = Vehicle.createTemplate(vehicleId);
             try {
-                String vehicleAsJSON = new ObjectMapper().writeValueAsString(vehicle);
                 //jedis.jsonSetLegacy(key, vehicle);  // This appears to marshall the vehicle, for storage
-                jedis.set(key, vehicleAsJSON);  // This appears to marshall the vehicle, for storage
+                jedis.set(key.getBytes(StandardCharsets.UTF_8), vehicleCodec.encode(vehicle));
             }
             catch (Exception e) {
                 //
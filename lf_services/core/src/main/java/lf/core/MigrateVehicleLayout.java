@@ -0,0 +1,139 @@
+package lf.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import lf.core.RedisPool.StorageLayout;
+import lf.model.Vehicle;
+import lf.model.VehicleCodec;
+import lf.model.VehicleFields;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.providers.PooledConnectionProvider;
+import redis.clients.jedis.resps.ScanResult;
+
+/**
+ * One-off tool to convert the stored vehicles between the STRING and HASH
+ * storage layouts (@see RedisPool.StorageLayout). Run it with the fleet
+ * managers stopped, then switch "akka.redis.storage-layout" to match.
+ * <p>
+ * Usage: MigrateVehicleLayout [-r redis-host] [-p redis-port] [-t hash|string]
+ *                             [-c string-codec] [-b batch-size]
+ * <p>
+ * Keys already in the target layout are left alone, so it is safe to re-run.
+ */
+public class MigrateVehicleLayout {
+
+    private static final String KEY_PREFIX = "vehicle:";
+
+    public static void main(String[] args) {
+        String redisHost = "localhost";
+        int redisPort = 6379;
+        StorageLayout target = StorageLayout.HASH;
+        VehicleCodec codec = VehicleCodec.forName("binary");
+        int batchSize = 500;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-r":
+                    redisHost = args[++i];
+                    break;
+                case "-p":
+                    redisPort = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    target = StorageLayout.forName(args[++i]);
+                    break;
+                case "-c":
+                    codec = VehicleCodec.forName(args[++i]);
+                    break;
+                case "-b":
+                    batchSize = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.out.println("Unknown flag: " + args[i] + "\n");
+                    System.out.println("Valid flags are:");
+                    System.out.println("\t-r <redis-host>\tRedis hostname (default: localhost)");
+                    System.out.println("\t-p <redis-port>\tRedis port (default: 6379)");
+                    System.out.println("\t-t <layout>\tTarget layout, 'hash' or 'string' (default: hash)");
+                    System.out.println("\t-c <codec>\tCodec for the string layout, 'binary' or 'json' (default: binary)");
+                    System.out.println("\t-b <batch-size>\tKeys per SCAN page / pipeline (default: 500)");
+                    System.exit(0);
+            }
+        }
+
+        PooledConnectionProvider provider = new PooledConnectionProvider(new HostAndPort(redisHost, redisPort));
+        UnifiedJedis jedis = new UnifiedJedis(provider);
+
+        String sourceType = (target == StorageLayout.HASH) ? "string" : "hash";
+        ScanParams params = new ScanParams().match(KEY_PREFIX + "*").count(batchSize);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        int migrated = 0;
+        int failed = 0;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, params);
+            List<String> keys = page.getResult();
+
+            // SCAN may hand back a key more than once (or one we have already
+            // converted) - only touch keys that are still in the old layout.
+            List<String> toMigrate = new ArrayList<String>();
+            try (Connection connection = provider.getConnection();
+                 Pipeline pipeline = new Pipeline(connection)) {
+                List<Response<String>> types = new ArrayList<Response<String>>();
+                for (String key : keys) {
+                    types.add(pipeline.type(key));
+                }
+                pipeline.sync();
+                for (int i = 0; i < keys.size(); i++) {
+                    if (sourceType.equals(types.get(i).get())) {
+                        toMigrate.add(keys.get(i));
+                    }
+                }
+            }
+
+            for (String key : toMigrate) {
+                try {
+                    if (target == StorageLayout.HASH) {
+                        Vehicle vehicle = VehicleCodec.decodeAny(jedis.get(key.getBytes(StandardCharsets.UTF_8)));
+                        Map<String, String> fields = VehicleFields.toFields(vehicle);
+                        // DEL + HSET in one transaction, so no reader sees the key missing.
+                        try (Connection connection = provider.getConnection()) {
+                            Transaction tx = new Transaction(connection);
+                            tx.del(key);
+                            tx.hset(key, fields);
+                            tx.exec();
+                        }
+                    }
+                    else {
+                        Vehicle vehicle = VehicleFields.fromFields(jedis.hgetAll(key));
+                        byte[] encoded = codec.encode(vehicle);
+                        try (Connection connection = provider.getConnection()) {
+                            Transaction tx = new Transaction(connection);
+                            tx.del(key);
+                            tx.set(key.getBytes(StandardCharsets.UTF_8), encoded);
+                            tx.exec();
+                        }
+                    }
+                    migrated++;
+                }
+                catch (Exception e) {
+                    System.out.println("Could not migrate " + key + ": " + e.getLocalizedMessage());
+                    failed++;
+                }
+            }
+            cursor = page.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+
+        System.out.println("Migrated " + migrated + " vehicle(s) to the " + target + " layout ("
+            + failed + " failed)");
+        jedis.close();
+    }
+
+}
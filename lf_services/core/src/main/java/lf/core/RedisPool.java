@@ -0,0 +1,150 @@
+package lf.core;
+
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import lf.model.VehicleCodec;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.ConnectionFactory;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.providers.PooledConnectionProvider;
+
+/**
+ * One (bounded) Redis connection pool per actor system.
+ * <p>
+ * Previously every VehicleTwin built its own pool - fine for a handful of
+ * vehicles, but thousands of twins meant thousands of sockets on the redis
+ * host. The pool is an Akka Extension, so it is created lazily on first use,
+ * shared by every actor in the system and closed when the system terminates.
+ * Pool sizing, idle and eviction settings live under "akka.redis".
+ */
+public class RedisPool implements Extension {
+
+    /**
+     * How each vehicle is laid out in redis (under "vehicle:&lt;id&gt;"):
+     * <ul>
+     *  <li>STRING - one encoded value (@see VehicleCodec). Every update
+     *      rewrites the whole vehicle.</li>
+     *  <li>HASH - one hash field per vehicle field (@see VehicleFields).
+     *      Updates write only the fields that changed.</li>
+     * </ul>
+     * Existing keys can be converted with lf.core.MigrateVehicleLayout.
+     */
+    public enum StorageLayout {
+        STRING, HASH;
+
+        public static StorageLayout forName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException iae) {
+                throw new IllegalArgumentException("Unknown redis storage layout: " + name);
+            }
+        }
+    }
+
+    private final PooledConnectionProvider provider;
+    private final UnifiedJedis jedis;
+    private final VehicleCodec vehicleCodec;
+    private final StorageLayout storageLayout;
+
+    // The Extension 'key'. Akka guarantees createExtension is called once per
+    // actor system, no matter how many actors ask for the pool concurrently.
+    public static class Id extends ExtensionId<RedisPool> {
+
+        private static final Id instance = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public RedisPool createExtension(ActorSystem<?> system) {
+            return new RedisPool(system);
+        }
+
+        public static RedisPool get(ActorSystem<?> system) {
+            return instance.apply(system);
+        }
+    }
+
+    /**
+     * Convenience accessor (saves callers from reaching for the Id).
+     */
+    public static RedisPool get(ActorSystem<?> system) {
+        return Id.get(system);
+    }
+
+    private RedisPool(ActorSystem<?> system) {
+        Config config = system.settings().config().getConfig("akka.redis");
+        HostAndPort hostAndPort = new HostAndPort(config.getString("hostname"), config.getInt("port"));
+        this.vehicleCodec = VehicleCodec.forName(config.getString("vehicle-codec"));
+        this.storageLayout = StorageLayout.forName(config.getString("storage-layout"));
+
+        JedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+            .connectionTimeoutMillis((int) config.getDuration("connection-timeout").toMillis())
+            .socketTimeoutMillis((int) config.getDuration("socket-timeout").toMillis())
+            .build();
+
+        Config poolSettings = config.getConfig("pool");
+        ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxTotal(poolSettings.getInt("max-total"));
+        poolConfig.setMaxIdle(poolSettings.getInt("max-idle"));
+        poolConfig.setMinIdle(poolSettings.getInt("min-idle"));
+        // When the pool is exhausted callers block (up to max-wait) rather than
+        // opening yet another socket. That is the whole point of bounding it.
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWait(poolSettings.getDuration("max-wait"));
+        poolConfig.setTestWhileIdle(poolSettings.getBoolean("test-while-idle"));
+        poolConfig.setTimeBetweenEvictionRuns(poolSettings.getDuration("time-between-eviction-runs"));
+        poolConfig.setMinEvictableIdleTime(poolSettings.getDuration("min-evictable-idle-time"));
+        poolConfig.setNumTestsPerEvictionRun(poolSettings.getInt("num-tests-per-eviction-run"));
+
+        this.provider = new PooledConnectionProvider(
+            new ConnectionFactory(hostAndPort, clientConfig), poolConfig);
+        this.jedis = new UnifiedJedis(provider);
+
+        system.log().info("Redis pool created for " + hostAndPort + " (max-total: "
+            + poolConfig.getMaxTotal() + ", layout: " + storageLayout + ")");
+
+        // Release the sockets when the actor system goes away.
+        system.getWhenTerminated().whenComplete((done, failure) -> jedis.close());
+    }
+
+    /**
+     * The shared client. Each command borrows a connection from the pool and
+     * returns it when done - callers must NOT close this.
+     */
+    public UnifiedJedis getJedis() {
+        return jedis;
+    }
+
+    /**
+     * The codec used to WRITE vehicles to this store. (Reads should use
+     * VehicleCodec.decodeAny - older values may be in another format.)
+     */
+    public VehicleCodec getVehicleCodec() {
+        return vehicleCodec;
+    }
+
+    /**
+     * STRING or HASH vehicles (@see StorageLayout).
+     */
+    public StorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+
+    /**
+     * Borrow a connection (e.g. for a Pipeline). The caller MUST close it,
+     * which returns it to the pool.
+     */
+    public Connection getConnection() {
+        return provider.getConnection();
+    }
+
+}
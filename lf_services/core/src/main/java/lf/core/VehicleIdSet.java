@@ -0,0 +1,327 @@
+package lf.core;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The set of vehicle ids a FleetManager owns.
+ * <p>
+ * Real fleets own scattered ids, not one contiguous range - but ids are
+ * mostly handed out in blocks. So the set is held run-length encoded: a
+ * sorted array of disjoint, non-adjacent [low, high] runs (inclusive),
+ * flattened as low0, high0, low1, high1, ... A block of a million ids costs
+ * 16 bytes; only ids with no neighbour in the set cost 16 bytes each.
+ * <ul>
+ *  <li>contains - one binary search over the runs</li>
+ *  <li>union / difference - one merge pass over both sets' runs</li>
+ * </ul>
+ * Immutable - a change (@see union, difference) is a new set, which can be
+ * handed between actors (and over the wire: serialised as its runs) as is.
+ * <p>
+ * The text form (@see parse, toString) is a list of ids and ranges, e.g.
+ * "0-2499, 3000, 4000-4099".
+ */
+public final class VehicleIdSet {
+
+    public static final VehicleIdSet EMPTY = new VehicleIdSet(new long[0]);
+
+    private final long[] runs;
+
+    // NOTE: Takes ownership of 'runs' - which must already be normalised.
+    private VehicleIdSet(long[] runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * From the wire. The runs are re-normalised (we don't trust the sender to
+     * have sorted or merged them).
+     */
+    @JsonCreator
+    public static VehicleIdSet ofRuns(@JsonProperty("runs") long[] runs) {
+        if (runs == null || runs.length == 0) {
+            return EMPTY;
+        }
+        if (runs.length % 2 != 0) {
+            throw new IllegalArgumentException("Vehicle id runs must be (low, high) pairs");
+        }
+        long[][] pairs = new long[runs.length / 2][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new long[] { runs[2 * i], runs[2 * i + 1] };
+        }
+        return normalise(pairs);
+    }
+
+    /**
+     * @return The ids low to high (inclusive) - empty if high < low.
+     */
+    public static VehicleIdSet range(long low, long high) {
+        return (high < low) ? EMPTY : new VehicleIdSet(new long[] { low, high });
+    }
+
+    /**
+     * @param ids In any order, duplicates allowed.
+     */
+    public static VehicleIdSet of(long... ids) {
+        long[][] pairs = new long[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            pairs[i] = new long[] { ids[i], ids[i] };
+        }
+        return normalise(pairs);
+    }
+
+    /**
+     * @param text Comma separated ids and (inclusive) ranges, e.g. "0-2499, 3000".
+     * @throws IllegalArgumentException If it isn't in that form.
+     */
+    public static VehicleIdSet parse(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return EMPTY;
+        }
+        String[] parts = trimmed.split(",");
+        long[][] pairs = new long[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            try {
+                // Skip the first character, so a negative low isn't taken as a '-'.
+                int dash = part.indexOf('-', 1);
+                if (dash < 0) {
+                    long id = Long.parseLong(part);
+                    pairs[i] = new long[] { id, id };
+                }
+                else {
+                    pairs[i] = new long[] {
+                        Long.parseLong(part.substring(0, dash).trim()),
+                        Long.parseLong(part.substring(dash + 1).trim()) };
+                }
+            }
+            catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Not a vehicle id or id range: '" + part + "'");
+            }
+        }
+        return normalise(pairs);
+    }
+
+    // Sort, drop empty runs, and merge overlapping or adjacent ones.
+    private static VehicleIdSet normalise(long[][] pairs) {
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        long[] runs = new long[pairs.length * 2];
+        int length = 0;
+        for (long[] pair : pairs) {
+            if (pair[1] < pair[0]) {
+                continue;
+            }
+            long last = (length > 0) ? runs[length - 1] : 0;
+            if (length > 0 && (last == Long.MAX_VALUE || pair[0] <= last + 1)) {
+                runs[length - 1] = Math.max(last, pair[1]);
+            }
+            else {
+                runs[length++] = pair[0];
+                runs[length++] = pair[1];
+            }
+        }
+        return (length == 0) ? EMPTY : new VehicleIdSet(Arrays.copyOf(runs, length));
+    }
+
+    //------------------------------------------------------------
+
+    public boolean contains(long vehicleId) {
+        int run = runAtOrBelow(vehicleId);
+        return run >= 0 && vehicleId <= runs[2 * run + 1];
+    }
+
+    // The last run starting at or below 'id', or -1.
+    private int runAtOrBelow(long id) {
+        int low = 0;
+        int high = runCount() - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runs[2 * mid] <= id) {
+                candidate = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * @return The ids in either set.
+     */
+    public VehicleIdSet union(VehicleIdSet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        long[] merged = new long[runs.length + other.runs.length];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < runs.length || j < other.runs.length) {
+            // Take whichever run starts first...
+            long low;
+            long high;
+            if (j >= other.runs.length || (i < runs.length && runs[i] <= other.runs[j])) {
+                low = runs[i];
+                high = runs[i + 1];
+                i += 2;
+            }
+            else {
+                low = other.runs[j];
+                high = other.runs[j + 1];
+                j += 2;
+            }
+            // ... and merge it into the last one if they overlap or touch.
+            long last = (length > 0) ? merged[length - 1] : 0;
+            if (length > 0 && (last == Long.MAX_VALUE || low <= last + 1)) {
+                merged[length - 1] = Math.max(last, high);
+            }
+            else {
+                merged[length++] = low;
+                merged[length++] = high;
+            }
+        }
+        return new VehicleIdSet(Arrays.copyOf(merged, length));
+    }
+
+    /**
+     * @return The ids in this set but not in 'other'.
+     */
+    public VehicleIdSet difference(VehicleIdSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return this;
+        }
+        // Each run of 'other' can split at most one of ours in two.
+        long[] result = new long[runs.length + other.runs.length];
+        int length = 0;
+        int j = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            long low = runs[i];
+            long high = runs[i + 1];
+            // Skip the runs of 'other' wholly below this one.
+            while (j < other.runs.length && other.runs[j + 1] < low) {
+                j += 2;
+            }
+            // Cut out each run of 'other' overlapping this one.
+            int k = j;
+            while (low <= high && k < other.runs.length && other.runs[k] <= high) {
+                if (other.runs[k] > low) {
+                    result[length++] = low;
+                    result[length++] = other.runs[k] - 1;
+                }
+                if (other.runs[k + 1] >= high) {
+                    low = 1;   // Nothing left of this run.
+                    high = 0;
+                }
+                else {
+                    low = other.runs[k + 1] + 1;
+                    k += 2;
+                }
+            }
+            if (low <= high) {
+                result[length++] = low;
+                result[length++] = high;
+            }
+        }
+        return (length == 0) ? EMPTY : new VehicleIdSet(Arrays.copyOf(result, length));
+    }
+
+    /**
+     * @return Whether any id is in both sets.
+     */
+    public boolean intersects(VehicleIdSet other) {
+        int i = 0;
+        int j = 0;
+        while (i < runs.length && j < other.runs.length) {
+            if (runs[i + 1] < other.runs[j]) {
+                i += 2;
+            }
+            else if (other.runs[j + 1] < runs[i]) {
+                j += 2;
+            }
+            else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //------------------------------------------------------------
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return runs.length == 0;
+    }
+
+    /**
+     * @return The number of ids in the set (saturates at Long.MAX_VALUE).
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            long runSize = runs[i + 1] - runs[i] + 1;
+            if (runSize <= 0 || size + runSize < 0) {
+                return Long.MAX_VALUE;  // Overflowed.
+            }
+            size += runSize;
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of [low, high] runs (@see low, high).
+     */
+    public int runCount() {
+        return runs.length / 2;
+    }
+
+    public long low(int run) {
+        return runs[2 * run];
+    }
+
+    public long high(int run) {
+        return runs[2 * run + 1];
+    }
+
+    /**
+     * @return The runs, flattened (low0, high0, low1, ...) - the wire form.
+     */
+    @JsonProperty("runs")
+    public long[] getRuns() {
+        return runs.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof VehicleIdSet) && Arrays.equals(runs, ((VehicleIdSet) o).runs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(runs);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < runs.length; i += 2) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(runs[i]);
+            if (runs[i + 1] != runs[i]) {
+                text.append('-').append(runs[i + 1]);
+            }
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,149 @@
+package lf.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import lf.core.RedisPool.StorageLayout;
+import lf.model.Vehicle;
+import lf.model.VehicleCodec;
+import lf.model.VehicleFields;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+/**
+ * Bulk (startup) read of the stored vehicles owned by one FleetManager.
+ * <p>
+ * Rather than every VehicleTwin doing its own GET when it is first touched,
+ * the manager SCANs the "vehicle:*" keyspace once, keeps the keys in its
+ * VehicleIdSet and fetches them with pipelined MGETs. Twins are then
+ * created (lazily, as before) from the preloaded snapshot. With the HASH
+ * storage layout the fetch is a pipelined HGETALL per key instead.
+ * <p>
+ * NOTE: Blocking - call this from the blocking-io dispatcher.
+ */
+public class VehicleSnapshot {
+
+    private static final String KEY_PREFIX = "vehicle:";
+
+    private VehicleSnapshot() {
+    }
+
+    /**
+     * @param redisPool
+     * @param ids       only these vehicles are loaded
+     * @param batchSize SCAN 'COUNT' hint, and the number of keys per MGET
+     * @return the stored vehicles in 'ids', keyed on vehicle id
+     */
+    public static LongObjectMap<Vehicle> load(RedisPool redisPool, VehicleIdSet ids, int batchSize) {
+        List<String> keys = scanKeysInSet(redisPool.getJedis(), ids, batchSize);
+
+        LongObjectMap<Vehicle> snapshot = new LongObjectMap<Vehicle>(keys.size());
+        if (keys.isEmpty()) {
+            return snapshot;
+        }
+        if (redisPool.getStorageLayout() == StorageLayout.HASH) {
+            loadHashes(redisPool, keys, snapshot);
+            return snapshot;
+        }
+
+        // One MGET per batch, all batches sent down one connection before
+        // reading any replies (i.e. one round-trip, not one per batch).
+        List<Response<List<byte[]>>> responses = new ArrayList<Response<List<byte[]>>>();
+        List<String[]> batches = new ArrayList<String[]>();
+        try (Connection connection = redisPool.getConnection();
+             Pipeline pipeline = new Pipeline(connection)) {
+            for (int from = 0; from < keys.size(); from += batchSize) {
+                String[] batch = keys.subList(from, Math.min(from + batchSize, keys.size())).toArray(new String[0]);
+                byte[][] batchKeys = new byte[batch.length][];
+                for (int i = 0; i < batch.length; i++) {
+                    batchKeys[i] = batch[i].getBytes(StandardCharsets.UTF_8);
+                }
+                batches.add(batch);
+                responses.add(pipeline.mget(batchKeys));
+            }
+            pipeline.sync();
+        }
+
+        for (int b = 0; b < batches.size(); b++) {
+            String[] batch = batches.get(b);
+            List<byte[]> values = responses.get(b).get();
+            for (int i = 0; i < batch.length; i++) {
+                byte[] storedVehicle = values.get(i);
+                if (storedVehicle == null) {
+                    continue;  // Deleted between the SCAN and the MGET.
+                }
+                try {
+                    // Binary or (older) JSON - the codec works out which.
+                    Vehicle vehicle = VehicleCodec.decodeAny(storedVehicle);
+                    snapshot.put(idFromKey(batch[i]), vehicle);
+                }
+                catch (Exception e) {
+                    // Toy system: skip it. The twin will start from a template.
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * HASH layout: one HGETALL per key, all down one pipeline.
+     */
+    private static void loadHashes(RedisPool redisPool, List<String> keys, LongObjectMap<Vehicle> snapshot) {
+        List<Response<Map<String, String>>> responses = new ArrayList<Response<Map<String, String>>>();
+        try (Connection connection = redisPool.getConnection();
+             Pipeline pipeline = new Pipeline(connection)) {
+            for (String key : keys) {
+                responses.add(pipeline.hgetAll(key));
+            }
+            pipeline.sync();
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                Map<String, String> fields = responses.get(i).get();
+                if (!fields.isEmpty()) {  // Empty - deleted since the SCAN.
+                    snapshot.put(idFromKey(keys.get(i)), VehicleFields.fromFields(fields));
+                }
+            }
+            catch (Exception e) {
+                // Not a hash (i.e. not migrated) or unreadable. Skip it, as above.
+            }
+        }
+    }
+
+    /**
+     * SCAN (never KEYS - it would block redis) for vehicle keys in 'ids'.
+     */
+    private static List<String> scanKeysInSet(UnifiedJedis jedis, VehicleIdSet ids, int batchSize) {
+        List<String> keys = new ArrayList<String>();
+        ScanParams params = new ScanParams().match(KEY_PREFIX + "*").count(batchSize);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, params);
+            for (String key : page.getResult()) {
+                long vehicleIdLong = idFromKey(key);
+                if (vehicleIdLong != 0 && ids.contains(vehicleIdLong)) {
+                    keys.add(key);
+                }
+            }
+            cursor = page.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        return keys;
+    }
+
+    private static long idFromKey(String key) {
+        try {
+            return Long.parseLong(key.substring(KEY_PREFIX.length()));
+        }
+        catch (NumberFormatException nfe) {
+            return 0;  // Not one of ours. 0 is never a valid vehicle id.
+        }
+    }
+
+}
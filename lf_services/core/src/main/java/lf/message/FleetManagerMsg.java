@@ -1,11 +1,16 @@
 package lf.message;
 
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.receptionist.ServiceKey;
 import lf.actor.Registry;
+import lf.core.LongObjectMap;
+import lf.core.VehicleIdSet;
 import lf.model.Vehicle;
+import lf.model.VehicleListQuery;
 
 /**
  * Messages understood by the LeetFleet Fleet Managers
@@ -40,10 +45,31 @@ public class FleetManagerMsg {
     public final static class ProcessVehicleWotUpdate implements Message, LFSerialisable {
         public final Vehicle vehicle;
         public final ActorRef<VehicleEventMsg.Message> vehicleWotEventRef;
+        public final long correlationId;  // Echoed back in the EventComplete.
 
-        public ProcessVehicleWotUpdate(Vehicle vehicle, ActorRef<VehicleEventMsg.Message> vehicleWotEventRef) {
+        public ProcessVehicleWotUpdate(Vehicle vehicle, ActorRef<VehicleEventMsg.Message> vehicleWotEventRef,
+                long correlationId) {
             this.vehicle = vehicle;
             this.vehicleWotEventRef = vehicleWotEventRef;
+            this.correlationId = correlationId;
+        }
+    }
+
+    /**
+     * Many WoT updates at once (@see the web portal's /wot/batch route). The
+     * portal groups a batch by owning fleet manager, so these should all be
+     * ours - any that aren't are counted as rejected. One VehicleBatchToWebP
+     * answers the lot.
+     */
+    public final static class ProcessVehicleWotUpdateBatch implements Message, LFSerialisable {
+        public final List<Vehicle> vehicles;
+        public final ActorRef<WebPortalMsg.VehicleBatchToWebP> replyTo;
+
+        public ProcessVehicleWotUpdateBatch(
+            @JsonProperty("vehicles") List<Vehicle> vehicles,
+            @JsonProperty("replyTo") ActorRef<WebPortalMsg.VehicleBatchToWebP> replyTo) {
+            this.vehicles = vehicles;
+            this.replyTo = replyTo;
         }
     }
 
@@ -57,50 +83,79 @@ public class FleetManagerMsg {
     public final static class ProcessVehicleWebUpdate implements Message, LFSerialisable {
         public final Vehicle vehicle;
         public final ActorRef<VehicleEventMsg.Message> vehicleWebEventRef;
+        public final long correlationId;  // Echoed back in the EventComplete.
 
-        public ProcessVehicleWebUpdate(Vehicle vehicle, ActorRef<VehicleEventMsg.Message> vehicleWebEventRef) {
+        public ProcessVehicleWebUpdate(Vehicle vehicle, ActorRef<VehicleEventMsg.Message> vehicleWebEventRef,
+                long correlationId) {
             this.vehicle = vehicle;
             this.vehicleWebEventRef = vehicleWebEventRef;
+            this.correlationId = correlationId;
         }
     }
 
     /**
      * Every fleet manager has a list of active vehicles. Receipt of this message
-     * is a request for a list of those vehicles in JSON format.
+     * is a request for a list of those vehicles in JSON format. The manager
+     * applies the query (paging, filters, projection) before replying.
      */
     public final static class ListVehiclesJson implements Message, LFSerialisable {
+        public final VehicleListQuery query;
         public final ActorRef<WebPortalMsg.VehicleListToWebP> portalRef;
 
-        public ListVehiclesJson(@JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleListToWebP> portalRef) {
+        public ListVehiclesJson(
+            @JsonProperty("query") VehicleListQuery query,
+            @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleListToWebP> portalRef)
+        {
+            this.query = query;
             this.portalRef = portalRef;
         }
     }
 
     /**
-     * Receive a vehicle model back from a VehicleTwin.
+     * As ListVehiclesJson, but the list is sent back in chunks (of
+     * "akka.fleet-manager.list-chunk-size" vehicles) so the web portal can
+     * stream it out as it arrives. The first chunk is sent straight away, each
+     * of the rest only once the portal has acknowledged the one before it
+     * (@see StreamVehiclesAck) - so a slow client holds the list back rather
+     * than let it pile up in the portal.
      */
-    public final static class VehicleModelResponse implements Message, LFSerialisable {
-        public final long query_id;
-        public final Vehicle vehicle;
+    public final static class StreamVehiclesJson implements Message, LFSerialisable {
+        public final String streamId;
+        public final ActorRef<WebPortalMsg.VehicleListChunkToWebP> portalRef;
 
-        public VehicleModelResponse(
-            @JsonProperty("query_id") long query_id, @JsonProperty("vehicle") Vehicle vehicle)
+        public StreamVehiclesJson(
+            @JsonProperty("streamId") String streamId,
+            @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleListChunkToWebP> portalRef)
         {
-            this.query_id = query_id;
-            this.vehicle = vehicle;
+            this.streamId = streamId;
+            this.portalRef = portalRef;
         }
     }
+
     /**
-     * Every fleet manager has a list of active vehicles. Receipt of this message
-     * is a request for a list of those vehicles in JSON format.
+     * The web portal has written out the last chunk of a streamed list - send
+     * the next.
+     */
+    public final static class StreamVehiclesAck implements Message, LFSerialisable {
+        public final String streamId;
+
+        public StreamVehiclesAck(@JsonProperty("streamId") String streamId) {
+            this.streamId = streamId;
+        }
+    }
+
+    /**
+     * A request for a single vehicle (by its long id) in JSON format. The twin
+     * replies straight to the portalRef - with a null vehicle if there is no
+     * such (active) vehicle.
      */
     public final static class GetVehicleJson implements Message, LFSerialisable {
         public final long vehicleId;
-        public final ActorRef<WebPortalMsg.VehicleListToWebP> portalRef;
+        public final ActorRef<WebPortalMsg.VehicleToWebP> portalRef;
 
         public GetVehicleJson(
             @JsonProperty("vehicleId") long vehicleId,
-            @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleListToWebP> portalRef)
+            @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleToWebP> portalRef)
         {
             this.vehicleId = vehicleId;
             this.portalRef = portalRef;
@@ -108,16 +163,77 @@ public class FleetManagerMsg {
     }
 
     /**
-     * A message indicating a timeout has occurred for a query.
+     * The stored vehicles for this fleet manager have been (bulk) loaded from
+     * redis at startup. Sent by the manager to itself - never over the cluster.
      */
-    public final static class QueryTimeout implements Message, LFSerialisable {
-        public final long query_id;
+    public final static class VehicleSnapshotLoaded implements Message {
+        public final LongObjectMap<Vehicle> snapshot;
+        public final Throwable failure;
 
-        public QueryTimeout(@JsonProperty("query_id") long query_id)
-        {
-            this.query_id = query_id;
+        public VehicleSnapshotLoaded(LongObjectMap<Vehicle> snapshot, Throwable failure) {
+            this.snapshot = snapshot;
+            this.failure = failure;
         }
     }
 
+    /**
+     * A VehicleTwin has applied a change to its state (unchanged updates are
+     * never reported). Sent by a twin to the manager that sent its latest
+     * update - which may be on another node.
+     */
+    public final static class VehicleStateChanged implements Message, LFSerialisable {
+        public final Vehicle vehicle;
+
+        public VehicleStateChanged(@JsonProperty("vehicle") Vehicle vehicle) {
+            this.vehicle = vehicle;
+        }
+    }
+
+    /**
+     * A VehicleTwin has been passivated (idle, or evicted). Its manager drops
+     * the vehicle until it is heard from again.
+     */
+    public final static class VehicleTwinStopped implements Message, LFSerialisable {
+        public final long vehicleId;
+
+        public VehicleTwinStopped(@JsonProperty("vehicleId") long vehicleId) {
+            this.vehicleId = vehicleId;
+        }
+    }
+
+    /**
+     * Change the vehicle ids a manager owns, without restarting it: 'added'
+     * are taken on, then 'removed' are given up. Sent via the Registry
+     * (@see Registry.ChangeFleetVehicleIds). The manager proposes the new ids
+     * to the Registry - and applies them only if it accepts them (it won't if
+     * they overlap another manager's). The portal is told the outcome.
+     */
+    public final static class ChangeVehicleIds implements Message, LFSerialisable {
+        public final VehicleIdSet added;
+        public final VehicleIdSet removed;
+        public final ActorRef<WebPortalMsg.VehicleIdsToWebP> portalRef;
+
+        public ChangeVehicleIds(
+            @JsonProperty("added") VehicleIdSet added,
+            @JsonProperty("removed") VehicleIdSet removed,
+            @JsonProperty("portalRef") ActorRef<WebPortalMsg.VehicleIdsToWebP> portalRef) {
+            this.added = (added == null) ? VehicleIdSet.EMPTY : added;
+            this.removed = (removed == null) ? VehicleIdSet.EMPTY : removed;
+            this.portalRef = portalRef;
+        }
+    }
+
+    /**
+     * The Registry's answer to a proposed change of vehicle ids
+     * (@see Registry.ProposeFleetManagerIds): 'rejection' is null if it took
+     * them on.
+     */
+    public final static class VehicleIdsReviewed implements LFSerialisable {
+        public final String rejection;
+
+        public VehicleIdsReviewed(@JsonProperty("rejection") String rejection) {
+            this.rejection = rejection;
+        }
+    }
 
 }
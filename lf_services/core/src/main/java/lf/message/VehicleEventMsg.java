@@ -18,40 +18,70 @@ public class VehicleEventMsg {
     public interface Message {
     }
 
+    /**
+     * Where a vehicle event came from: the vehicle itself (/wot) or a user of
+     * the web client (/web).
+     */
+    public enum Source {
+      WOT, WEB
+    }
+
+    /**
+     * A vehicle event, from the web portal. If the portal's routing table
+     * already knows the owning manager it is passed in 'fleetManagerRef' and
+     * the registry isn't asked. Otherwise (null) the registry is asked.
+     */
     public final static class EventFromWebP implements Message, LFSerialisable {
       public final Vehicle vehicle;
       public final ActorRef<WebPortalMsg.VehicleToWebP> replyTo;
       public final ActorRef<Registry.Message> registryRef;
+      public final ActorRef<FleetManagerMsg.Message> fleetManagerRef;
+      public final Source source;
 
       public EventFromWebP(
           Vehicle vehicle, ActorRef<WebPortalMsg.VehicleToWebP> portalRef,
-          ActorRef<Registry.Message> registryRef) {
+          ActorRef<Registry.Message> registryRef, ActorRef<FleetManagerMsg.Message> fleetManagerRef,
+          Source source) {
         this.vehicle = vehicle;
         // this.vehicle.setFleetId("success lads");
         this.replyTo = portalRef;
         this.registryRef = registryRef;
+        this.fleetManagerRef = fleetManagerRef;
+        this.source = source;
       }
     }
 
     public final static class FleetMgrRefList implements Message, LFSerialisable {
       public final Collection<ActorRef<FleetManagerMsg.Message>> fleetManagerRefs;
       public final ActorRef<Registry.Message> registryRef;
+      public final long correlationId;  // As sent in the ListFleetMgrRefs.
 
       public FleetMgrRefList(Collection<ActorRef<FleetManagerMsg.Message>> fleetManagerRefs,
-          ActorRef<Registry.Message> registryRef) {
+          ActorRef<Registry.Message> registryRef, long correlationId) {
         this.fleetManagerRefs = fleetManagerRefs;
         this.registryRef = registryRef;
+        this.correlationId = correlationId;
       }
     }
 
+    /**
+     * From a FleetManager: the event has been handled. 'correlationId' is the
+     * one the event was sent with - a VehicleEventIngest worker has many events
+     * in flight and uses it to find the request this answers. A null 'vehicle'
+     * means the manager doesn't own the vehicle (so didn't apply it).
+     */
     public final static class EventComplete implements Message, LFSerialisable {
       public final Vehicle vehicle;
+      public final long correlationId;
 
       // All constructors (technically) should be annotated - but we appear to get
       // deserialisation errors for constructors with a single parameter:
       // (@see: https://doc.akka.io/docs/akka/current/serialization-jackson.html)
-      public EventComplete(@JsonProperty("vehicle") Vehicle vehicle) {
+      public EventComplete(
+          @JsonProperty("vehicle") Vehicle vehicle,
+          @JsonProperty("correlationId") long correlationId) {
         this.vehicle = vehicle;
+        this.correlationId = correlationId;
       }
     }
 
@@ -12,13 +12,17 @@ import lf.model.Vehicle;
  */
 public class WebPortalMsg {
 
+  // Name of the (cluster wide) pub-sub topic the fleet managers publish vehicle
+  // changes on (@see lf.actor.VehicleChangeFeed).
+  public static final String VEHICLE_CHANGES_TOPIC = "vehicle-changes";
+
   public interface Message {
   };
 
   public final static class VehicleToWebP implements Message, LFSerialisable {
     public Vehicle vehicle;
 
-    public VehicleToWebP(Vehicle vehicle) {
+    public VehicleToWebP(@JsonProperty("vehicle") Vehicle vehicle) {
       this.vehicle = vehicle;
     }
   }
@@ -33,10 +37,86 @@ public class WebPortalMsg {
 
   public final static class VehicleListToWebP implements Message, LFSerialisable {
     public List<Vehicle> vehicles;
+    public Long nextAfter;  // Cursor for the next page (null if there isn't one).
+
+    public VehicleListToWebP(
+      @JsonProperty("vehicles") List<Vehicle> vehicles,
+      @JsonProperty("nextAfter") Long nextAfter)
+    {
+      this.vehicles = vehicles;
+      this.nextAfter = nextAfter;
+    }
+  }
+
+  /**
+   * One chunk of a streamed vehicle list. A fleet manager sends as many as it
+   * needs, then a final (empty) chunk with 'last' set.
+   */
+  public final static class VehicleListChunkToWebP implements Message, LFSerialisable {
+    public final List<Vehicle> vehicles;
+    public final boolean last;
+
+    public VehicleListChunkToWebP(
+      @JsonProperty("vehicles") List<Vehicle> vehicles,
+      @JsonProperty("last") boolean last)
+    {
+      this.vehicles = vehicles;
+      this.last = last;
+    }
+  }
 
-    public VehicleListToWebP(@JsonProperty("vehicles") List<Vehicle> vehicles) {
+  /**
+   * The answer to a batch of WoT updates (/wot/batch): the vehicles that were
+   * applied (stamped with their fleetId, as for a single update) and how many
+   * were not (no owner, or the owner didn't answer in time).
+   */
+  public final static class VehicleBatchToWebP implements Message, LFSerialisable {
+    public final List<Vehicle> vehicles;
+    public final int rejected;
+
+    public VehicleBatchToWebP(
+      @JsonProperty("vehicles") List<Vehicle> vehicles,
+      @JsonProperty("rejected") int rejected)
+    {
+      this.vehicles = vehicles;
+      this.rejected = rejected;
+    }
+  }
+
+  /**
+   * Vehicles that have changed in one fleet since the last notification.
+   * Published by each fleet manager, so the web portal can keep its near
+   * cache fresh without asking.
+   */
+  public final static class VehicleChangesToWebP implements Message, LFSerialisable {
+    public final long fleetManagerId;
+    public final List<Vehicle> vehicles;
+
+    public VehicleChangesToWebP(
+      @JsonProperty("fleetManagerId") long fleetManagerId,
+      @JsonProperty("vehicles") List<Vehicle> vehicles)
+    {
+      this.fleetManagerId = fleetManagerId;
       this.vehicles = vehicles;
     }
   }
 
+  /**
+   * The outcome of a change of a fleet manager's vehicle ids: the ids it owns
+   * now (null if there is no such manager), and why the change was refused
+   * (null if it was made).
+   */
+  public final static class VehicleIdsToWebP implements Message, LFSerialisable {
+    public final String vehicleIds;
+    public final String rejection;
+
+    public VehicleIdsToWebP(
+      @JsonProperty("vehicleIds") String vehicleIds,
+      @JsonProperty("rejection") String rejection)
+    {
+      this.vehicleIds = vehicleIds;
+      this.rejection = rejection;
+    }
+  }
+
 }
@@ -0,0 +1,148 @@
+package lf.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact binary encoding of a Vehicle.
+ * <p>
+ * Layout (version 1):
+ * <pre>
+ *  magic       1 byte   (0xB1 - never the first byte of a JSON document)
+ *  version     1 byte
+ *  flags       1 byte   (bit 0: wotFltIdUpdateRqd)
+ *  present     1 byte   (bit per nullable field, in the order below)
+ *  vehicleId   UTF      (if present)
+ *  fleetId     UTF      (if present)
+ *  tdURL       UTF      (if present)
+ *  tyrePressure        float (4 bytes, if present)
+ *  mileage             float (4 bytes, if present)
+ *  oilLevel            float (4 bytes, if present)
+ *  nextServiceDistance long  (8 bytes, if present)
+ *  doorStatus          1 byte dictionary code (+ UTF if not in the dictionary)
+ *  maintenanceNeeded   1 byte dictionary code (+ UTF if not in the dictionary)
+ * </pre>
+ * No field names, and the two status fields usually cost a single byte.
+ */
+public class BinaryVehicleCodec implements VehicleCodec {
+
+    public static final BinaryVehicleCodec INSTANCE = new BinaryVehicleCodec();
+
+    static final byte MAGIC = (byte) 0xB1;
+    static final byte VERSION = 1;
+
+    // Dictionary codes. Index == code. 'LITERAL' means a UTF string follows.
+    private static final String[] DOOR_STATUSES = { null, "", "LOCKED", "UNLOCKED" };
+    private static final String[] MAINTENANCE_NEEDED = { null, "", "false", "true" };
+    private static final int LITERAL = 0xFF;
+
+    private static final int FLAG_WOT_FLT_ID_UPDATE_RQD = 1;
+
+    private static final int HAS_VEHICLE_ID = 1;
+    private static final int HAS_FLEET_ID = 1 << 1;
+    private static final int HAS_TD_URL = 1 << 2;
+    private static final int HAS_TYRE_PRESSURE = 1 << 3;
+    private static final int HAS_MILEAGE = 1 << 4;
+    private static final int HAS_OIL_LEVEL = 1 << 5;
+    private static final int HAS_NEXT_SERVICE_DISTANCE = 1 << 6;
+
+    private BinaryVehicleCodec() {
+    }
+
+    static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Vehicle vehicle) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        int present = 0;
+        if (vehicle.getVehicleId() != null)           present |= HAS_VEHICLE_ID;
+        if (vehicle.getFleetId() != null)             present |= HAS_FLEET_ID;
+        if (vehicle.getTdURL() != null)               present |= HAS_TD_URL;
+        if (vehicle.getTyrePressure() != null)        present |= HAS_TYRE_PRESSURE;
+        if (vehicle.getMileage() != null)             present |= HAS_MILEAGE;
+        if (vehicle.getOilLevel() != null)            present |= HAS_OIL_LEVEL;
+        if (vehicle.getNextServiceDistance() != null) present |= HAS_NEXT_SERVICE_DISTANCE;
+
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(vehicle.isWotFltIdUpdateRqd() ? FLAG_WOT_FLT_ID_UPDATE_RQD : 0);
+        out.writeByte(present);
+
+        if ((present & HAS_VEHICLE_ID) != 0)            out.writeUTF(vehicle.getVehicleId());
+        if ((present & HAS_FLEET_ID) != 0)              out.writeUTF(vehicle.getFleetId());
+        if ((present & HAS_TD_URL) != 0)                out.writeUTF(vehicle.getTdURL());
+        if ((present & HAS_TYRE_PRESSURE) != 0)         out.writeFloat(vehicle.getTyrePressure());
+        if ((present & HAS_MILEAGE) != 0)               out.writeFloat(vehicle.getMileage());
+        if ((present & HAS_OIL_LEVEL) != 0)             out.writeFloat(vehicle.getOilLevel());
+        if ((present & HAS_NEXT_SERVICE_DISTANCE) != 0) out.writeLong(vehicle.getNextServiceDistance());
+
+        writeDictionary(out, DOOR_STATUSES, vehicle.getDoorStatus());
+        writeDictionary(out, MAINTENANCE_NEEDED, vehicle.getMaintenanceNeeded());
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Vehicle decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        if (in.readByte() != MAGIC) {
+            throw new IOException("Not a binary encoded vehicle");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary vehicle version: " + version);
+        }
+        int flags = in.readUnsignedByte();
+        int present = in.readUnsignedByte();
+
+        Vehicle vehicle = new Vehicle();
+        vehicle.setWotFltIdUpdateRqd((flags & FLAG_WOT_FLT_ID_UPDATE_RQD) != 0);
+        // NOTE: setVehicleId also derives the (long) vehicleIdLong.
+        if ((present & HAS_VEHICLE_ID) != 0)            vehicle.setVehicleId(in.readUTF());
+        if ((present & HAS_FLEET_ID) != 0)              vehicle.setFleetId(in.readUTF());
+        if ((present & HAS_TD_URL) != 0)                vehicle.setTdURL(in.readUTF());
+        if ((present & HAS_TYRE_PRESSURE) != 0)         vehicle.setTyrePressure(in.readFloat());
+        if ((present & HAS_MILEAGE) != 0)               vehicle.setMileage(in.readFloat());
+        if ((present & HAS_OIL_LEVEL) != 0)             vehicle.setOilLevel(in.readFloat());
+        if ((present & HAS_NEXT_SERVICE_DISTANCE) != 0) vehicle.setNextServiceDistance(in.readLong());
+
+        vehicle.setDoorStatus(readDictionary(in, DOOR_STATUSES));
+        vehicle.setMaintenanceNeeded(readDictionary(in, MAINTENANCE_NEEDED));
+
+        return vehicle;
+    }
+
+    private static void writeDictionary(DataOutputStream out, String[] dictionary, String value)
+    throws IOException
+    {
+        for (int code = 0; code < dictionary.length; code++) {
+            if (value == null ? dictionary[code] == null : value.equals(dictionary[code])) {
+                out.writeByte(code);
+                return;
+            }
+        }
+        out.writeByte(LITERAL);
+        out.writeUTF(value);
+    }
+
+    private static String readDictionary(DataInputStream in, String[] dictionary) throws IOException {
+        int code = in.readUnsignedByte();
+        if (code == LITERAL) {
+            return in.readUTF();
+        }
+        if (code >= dictionary.length) {
+            throw new IOException("Unknown dictionary code: " + code);
+        }
+        return dictionary[code];
+    }
+
+}
@@ -4,7 +4,7 @@ import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
-import lf.core.VehicleIdRange;
+import lf.core.VehicleIdSet;
 
 /**
  * Basic (serialisable) representation of Fleet.
@@ -15,7 +15,7 @@ public class Fleet {
     private String managerId;  // Internal Fleet Manager Id
 
     @JsonIgnore
-    private VehicleIdRange carelessFleetIdRange;
+    private VehicleIdSet vehicleIds;
 
     @JsonIgnore
     private List<Vehicle> vehicles;
@@ -44,11 +44,11 @@ public class Fleet {
         this.managerId = managerId;
     }
 
-    public VehicleIdRange getCarelessFleetIdRange() {
-        return carelessFleetIdRange;
+    public VehicleIdSet getVehicleIds() {
+        return vehicleIds;
     }
-    public void setCarelessFleetIdRange(VehicleIdRange carelessFleetIdRange) {
-        this.carelessFleetIdRange = carelessFleetIdRange;
+    public void setVehicleIds(VehicleIdSet vehicleIds) {
+        this.vehicleIds = vehicleIds;
     }
 
     public List<Vehicle> getVehicles() {
@@ -0,0 +1,32 @@
+package lf.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The original persisted format: a Vehicle as Jackson JSON (UTF-8).
+ * Kept as a selectable fallback, and to read older stores.
+ */
+public class JsonVehicleCodec implements VehicleCodec {
+
+    public static final JsonVehicleCodec INSTANCE = new JsonVehicleCodec();
+
+    // ObjectMapper is thread safe once configured. One is plenty (building a
+    // new one per write was a noticeable CPU cost).
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private JsonVehicleCodec() {
+    }
+
+    @Override
+    public byte[] encode(Vehicle vehicle) throws IOException {
+        return MAPPER.writeValueAsBytes(vehicle);
+    }
+
+    @Override
+    public Vehicle decode(byte[] data) throws IOException {
+        return MAPPER.readValue(data, Vehicle.class);
+    }
+
+}
@@ -1,5 +1,7 @@
 package lf.model;
 
+import java.util.Objects;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 public class Vehicle {
@@ -88,6 +90,15 @@ public class Vehicle {
         return vehicleIdLong;
     }
 
+    /**
+     * The inverse of wotIdToLongId.
+     * @param vehicleIdLong
+     * @return The WoT VehicleId, e.g. "WoT-ID-Mfr-VIN-nnnn"
+     */
+    public static String longIdToWotId(long vehicleIdLong) {
+        return "WoT-ID-Mfr-VIN-" + vehicleIdLong;
+    }
+
     //------------------------------------------------------------
 
     public String getVehicleId() {
@@ -174,4 +185,38 @@ public class Vehicle {
         this.maintenanceNeeded = maintenanceNeeded;
     }
 
-}
\ No newline at end of file
+    //------------------------------------------------------------
+
+    /**
+     * Field-wise equality over the state a vehicle reports (vehicleIdLong is
+     * derived from vehicleId, so it is not compared separately). Used to spot
+     * updates that change nothing.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Vehicle)) {
+            return false;
+        }
+        Vehicle other = (Vehicle) o;
+        return wotFltIdUpdateRqd == other.wotFltIdUpdateRqd
+            && Objects.equals(vehicleId, other.vehicleId)
+            && Objects.equals(fleetId, other.fleetId)
+            && Objects.equals(tdURL, other.tdURL)
+            && Objects.equals(tyrePressure, other.tyrePressure)
+            && Objects.equals(mileage, other.mileage)
+            && Objects.equals(oilLevel, other.oilLevel)
+            && Objects.equals(nextServiceDistance, other.nextServiceDistance)
+            && Objects.equals(doorStatus, other.doorStatus)
+            && Objects.equals(maintenanceNeeded, other.maintenanceNeeded);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(vehicleId, fleetId, wotFltIdUpdateRqd, tdURL, tyrePressure,
+            mileage, oilLevel, nextServiceDistance, doorStatus, maintenanceNeeded);
+    }
+
+}
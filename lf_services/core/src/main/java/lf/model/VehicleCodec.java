@@ -0,0 +1,47 @@
+package lf.model;
+
+import java.io.IOException;
+
+/**
+ * How a Vehicle is encoded when persisted (e.g. as a redis value).
+ * <p>
+ * Two implementations:
+ * <ul>
+ *  <li>"binary" - compact, fixed-width, versioned (@see BinaryVehicleCodec)</li>
+ *  <li>"json"   - the original Jackson JSON (@see JsonVehicleCodec)</li>
+ * </ul>
+ * Whichever is selected for writing, {@link #decodeAny(byte[])} reads both -
+ * so stores written before the binary format existed still load.
+ */
+public interface VehicleCodec {
+
+    byte[] encode(Vehicle vehicle) throws IOException;
+
+    Vehicle decode(byte[] data) throws IOException;
+
+    /**
+     * Look up a codec by its configured name ("binary" or "json").
+     */
+    static VehicleCodec forName(String name) {
+        switch (name.toLowerCase()) {
+            case "binary":
+                return BinaryVehicleCodec.INSTANCE;
+            case "json":
+                return JsonVehicleCodec.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown vehicle codec: " + name);
+        }
+    }
+
+    /**
+     * Decode a stored vehicle in either format. Binary values always start
+     * with a magic byte that can never start a JSON document.
+     */
+    static Vehicle decodeAny(byte[] data) throws IOException {
+        if (BinaryVehicleCodec.isBinary(data)) {
+            return BinaryVehicleCodec.INSTANCE.decode(data);
+        }
+        return JsonVehicleCodec.INSTANCE.decode(data);
+    }
+
+}
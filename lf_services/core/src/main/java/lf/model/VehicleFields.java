@@ -0,0 +1,105 @@
+package lf.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A Vehicle as a flat map of field name to (string) value - the layout used
+ * when each vehicle is stored as a redis hash. Null fields are left out.
+ * <p>
+ * {@link #diff(Vehicle, Vehicle)} gives just the fields that changed, so a
+ * telemetry tick that only moves the mileage writes one hash field rather
+ * than the whole vehicle.
+ */
+public class VehicleFields {
+
+    public static final String VEHICLE_ID = "vehicleId";
+    public static final String FLEET_ID = "fleetId";
+    public static final String WOT_FLT_ID_UPDATE_RQD = "wotFltIdUpdateRqd";
+    public static final String TD_URL = "tdURL";
+    public static final String TYRE_PRESSURE = "tyrePressure";
+    public static final String MILEAGE = "mileage";
+    public static final String OIL_LEVEL = "oilLevel";
+    public static final String NEXT_SERVICE_DISTANCE = "nextServiceDistance";
+    public static final String DOOR_STATUS = "doorStatus";
+    public static final String MAINTENANCE_NEEDED = "maintenanceNeeded";
+
+    private VehicleFields() {
+    }
+
+    /**
+     * Every (non null) field of the vehicle.
+     */
+    public static Map<String, String> toFields(Vehicle vehicle) {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> field : allFields(vehicle).entrySet()) {
+            if (field.getValue() != null) {
+                fields.put(field.getKey(), field.getValue());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Rebuild a vehicle from its stored fields (missing fields stay null).
+     */
+    public static Vehicle fromFields(Map<String, String> fields) {
+        Vehicle vehicle = new Vehicle();
+        // NOTE: setVehicleId also derives the (long) vehicleIdLong.
+        vehicle.setVehicleId(fields.get(VEHICLE_ID));
+        vehicle.setFleetId(fields.get(FLEET_ID));
+        vehicle.setWotFltIdUpdateRqd(Boolean.parseBoolean(fields.get(WOT_FLT_ID_UPDATE_RQD)));
+        vehicle.setTdURL(fields.get(TD_URL));
+        vehicle.setTyrePressure(toFloat(fields.get(TYRE_PRESSURE)));
+        vehicle.setMileage(toFloat(fields.get(MILEAGE)));
+        vehicle.setOilLevel(toFloat(fields.get(OIL_LEVEL)));
+        vehicle.setNextServiceDistance(toLong(fields.get(NEXT_SERVICE_DISTANCE)));
+        vehicle.setDoorStatus(fields.get(DOOR_STATUS));
+        vehicle.setMaintenanceNeeded(fields.get(MAINTENANCE_NEEDED));
+        return vehicle;
+    }
+
+    /**
+     * The fields that differ between two states of the same vehicle. A field
+     * that has become null maps to null (i.e. it should be deleted).
+     */
+    public static Map<String, String> diff(Vehicle before, Vehicle after) {
+        Map<String, String> beforeFields = allFields(before);
+        Map<String, String> changed = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> field : allFields(after).entrySet()) {
+            if (!Objects.equals(beforeFields.get(field.getKey()), field.getValue())) {
+                changed.put(field.getKey(), field.getValue());
+            }
+        }
+        return changed;
+    }
+
+    private static Map<String, String> allFields(Vehicle vehicle) {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        fields.put(VEHICLE_ID, vehicle.getVehicleId());
+        fields.put(FLEET_ID, vehicle.getFleetId());
+        fields.put(WOT_FLT_ID_UPDATE_RQD, Boolean.toString(vehicle.isWotFltIdUpdateRqd()));
+        fields.put(TD_URL, vehicle.getTdURL());
+        fields.put(TYRE_PRESSURE, toString(vehicle.getTyrePressure()));
+        fields.put(MILEAGE, toString(vehicle.getMileage()));
+        fields.put(OIL_LEVEL, toString(vehicle.getOilLevel()));
+        fields.put(NEXT_SERVICE_DISTANCE, toString(vehicle.getNextServiceDistance()));
+        fields.put(DOOR_STATUS, vehicle.getDoorStatus());
+        fields.put(MAINTENANCE_NEEDED, vehicle.getMaintenanceNeeded());
+        return fields;
+    }
+
+    private static String toString(Object value) {
+        return (value == null) ? null : value.toString();
+    }
+
+    private static Float toFloat(String value) {
+        return (value == null) ? null : Float.valueOf(value);
+    }
+
+    private static Long toLong(String value) {
+        return (value == null) ? null : Long.valueOf(value);
+    }
+
+}
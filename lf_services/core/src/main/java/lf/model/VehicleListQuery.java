@@ -0,0 +1,126 @@
+package lf.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Which vehicles a list request wants: an optional page (vehicles with an id
+ * greater than 'after', at most 'limit' of them, in id order), optional
+ * filters and an optional projection (only these fields are returned).
+ * <p>
+ * The query travels with the request to the fleet manager, which evaluates
+ * it before anything is serialised back over the cluster. Every part is
+ * optional (null) - {@link #ALL} is every vehicle, every field.
+ */
+public class VehicleListQuery {
+
+    public static final VehicleListQuery ALL = new VehicleListQuery(null, null, null, null, null, null);
+
+    public final Long after;                 // Cursor: only ids greater than this.
+    public final Integer limit;              // Page size.
+    public final Boolean maintenanceNeeded;  // Filter: maintenanceNeeded == this.
+    public final String doorStatus;          // Filter: doorStatus == this (ignoring case).
+    public final Float minMileage;           // Filter: mileage > this.
+    public final List<String> fields;        // Projection (@see VehicleFields).
+
+    public VehicleListQuery(
+        @JsonProperty("after") Long after,
+        @JsonProperty("limit") Integer limit,
+        @JsonProperty("maintenanceNeeded") Boolean maintenanceNeeded,
+        @JsonProperty("doorStatus") String doorStatus,
+        @JsonProperty("minMileage") Float minMileage,
+        @JsonProperty("fields") List<String> fields)
+    {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("limit must be greater than zero");
+        }
+        this.after = after;
+        this.limit = limit;
+        this.maintenanceNeeded = maintenanceNeeded;
+        this.doorStatus = doorStatus;
+        this.minMileage = minMileage;
+        this.fields = fields;
+    }
+
+    /**
+     * One page of results. 'nextAfter' is the cursor for the next page (null
+     * if this is the last one).
+     */
+    public static final class Page {
+        public final List<Vehicle> vehicles;
+        public final Long nextAfter;
+
+        public Page(List<Vehicle> vehicles, Long nextAfter) {
+            this.vehicles = vehicles;
+            this.nextAfter = nextAfter;
+        }
+    }
+
+    /**
+     * True if this query asks for everything (no paging, filters or projection).
+     */
+    @JsonIgnore
+    public boolean isAll() {
+        return after == null && limit == null && maintenanceNeeded == null
+            && doorStatus == null && minMileage == null && fields == null;
+    }
+
+    /**
+     * Run the query.
+     * @param byId The vehicles to select from, keyed (and so ordered) on id.
+     */
+    public Page select(NavigableMap<Long, Vehicle> byId) {
+        Iterable<Vehicle> candidates = (after == null) ? byId.values() : byId.tailMap(after, false).values();
+        List<Vehicle> selected = new ArrayList<Vehicle>();
+        for (Vehicle vehicle : candidates) {
+            if (!matches(vehicle)) {
+                continue;
+            }
+            if (limit != null && selected.size() == limit) {
+                // There is at least one more - hand out a cursor.
+                return new Page(selected, selected.get(selected.size() - 1).getVehicleIdLong());
+            }
+            selected.add(project(vehicle));
+        }
+        return new Page(selected, null);
+    }
+
+    public boolean matches(Vehicle vehicle) {
+        if (maintenanceNeeded != null
+                && !maintenanceNeeded.toString().equalsIgnoreCase(vehicle.getMaintenanceNeeded())) {
+            return false;
+        }
+        if (doorStatus != null && !doorStatus.equalsIgnoreCase(vehicle.getDoorStatus())) {
+            return false;
+        }
+        if (minMileage != null && (vehicle.getMileage() == null || vehicle.getMileage() <= minMileage)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The vehicle cut down to the requested fields. The id is always kept.
+     */
+    private Vehicle project(Vehicle vehicle) {
+        if (fields == null) {
+            return vehicle;
+        }
+        Map<String, String> all = VehicleFields.toFields(vehicle);
+        Map<String, String> kept = new LinkedHashMap<String, String>();
+        kept.put(VehicleFields.VEHICLE_ID, vehicle.getVehicleId());
+        for (String field : fields) {
+            if (all.containsKey(field)) {
+                kept.put(field, all.get(field));
+            }
+        }
+        return VehicleFields.fromFields(kept);
+    }
+
+}
@@ -0,0 +1,120 @@
+package lf.actor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import lf.message.FleetManagerMsg;
+import lf.message.VehicleEventMsg;
+import lf.message.WebPortalMsg;
+import lf.model.Vehicle;
+import lf.model.VehicleListQuery;
+
+/**
+ * A fleet manager's latency holds steady while redis and the vehicles' WoT
+ * endpoints hang: many twins at once have their I/O stuck - far more than
+ * the blocking-io dispatcher has threads - and the manager (on the default
+ * dispatcher) still answers list queries within a fixed bound.
+ * <p>
+ * Redis and every Exposed Thing are a socket that accepts connections but
+ * never answers. Each twin's first update calls its Exposed Thing (to set the
+ * fleet id), and the manager's write-behind stage writes to redis.
+ */
+public class FleetManagerLatencyTest {
+
+    private static final int TWINS = 200;
+    // Far below the blocked I/O - a manager sharing its threads would miss it.
+    private static final Duration BOUND = Duration.ofMillis(500);
+
+    // One for redis, one for the Exposed Things. Never accept()ed: connections
+    // complete (from the - deep - backlog), requests are never answered.
+    private static final ServerSocket silentRedis = openSilentServer();
+    private static final ServerSocket silentThings = openSilentServer();
+
+    // A one node cluster (the twins are sharded entities).
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(
+        ConfigFactory.parseString(
+            "akka.actor.provider = cluster\n"
+            + "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+            + "akka.remote.artery.canonical.port = 0\n"
+            + "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n"
+            + "akka.redis.hostname = \"localhost\"\n"
+            + "akka.redis.port = " + silentRedis.getLocalPort() + "\n"
+            + "akka.redis.socket-timeout = 30s\n"
+            + "akka.fleet-manager.write-behind.max-batch-size = 1\n"
+            + "akka.fleet-manager.metrics.log-interval = 0\n"));
+
+    private static ServerSocket openSilentServer() {
+        try {
+            return new ServerSocket(0, 4 * TWINS);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @AfterClass
+    public static void closeSilentServers() throws IOException {
+        // Resets the pending connections - so the stuck calls fail.
+        silentRedis.close();
+        silentThings.close();
+    }
+
+    @Test
+    public void answersWhileManyTwinsAreBlockedOnIo() {
+        Cluster cluster = Cluster.get(testKit.system());
+        cluster.manager().tell(new Join(cluster.selfMember().address()));
+
+        ActorRef<FleetManagerMsg.Message> fleetManager = testKit.spawn(FleetManager.create(ConfigFactory.parseString(
+            "name = \"Latency\"\n"
+            + "vehicle-ids = \"1-" + TWINS + "\"\n"
+            + "hydration.enabled = false\n")));
+
+        // First contact for every vehicle: each twin calls its (silent)
+        // Exposed Thing, and its state is written to (silent) redis.
+        TestProbe<VehicleEventMsg.Message> events = testKit.createTestProbe();
+        for (long vehicleIdLong = 1; vehicleIdLong <= TWINS; vehicleIdLong++) {
+            Vehicle vehicle = Vehicle.createForMileage(Vehicle.longIdToWotId(vehicleIdLong), "not_defined", 10f);
+            vehicle.setTdURL("http://localhost:" + silentThings.getLocalPort() + "/" + vehicle.getVehicleId() + "/");
+            fleetManager.tell(new FleetManagerMsg.ProcessVehicleWotUpdate(vehicle, events.getRef(), vehicleIdLong));
+        }
+        for (int i = 0; i < TWINS; i++) {
+            events.expectMessageClass(VehicleEventMsg.EventComplete.class, Duration.ofSeconds(10));
+        }
+
+        // The twins keep applying updates (and reporting them) regardless.
+        TestProbe<WebPortalMsg.VehicleListToWebP> portal = testKit.createTestProbe();
+        portal.awaitAssert(Duration.ofSeconds(10), () -> {
+            fleetManager.tell(new FleetManagerMsg.ListVehiclesJson(VehicleListQuery.ALL, portal.getRef()));
+            assertEquals(TWINS, portal.expectMessageClass(WebPortalMsg.VehicleListToWebP.class, BOUND).vehicles.size());
+            return null;
+        });
+
+        // With all that I/O still stuck, every query is answered in time.
+        long slowestNanos = 0;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            fleetManager.tell(new FleetManagerMsg.ListVehiclesJson(VehicleListQuery.ALL, portal.getRef()));
+            portal.expectMessageClass(WebPortalMsg.VehicleListToWebP.class, BOUND);
+            slowestNanos = Math.max(slowestNanos, System.nanoTime() - start);
+        }
+        assertTrue("Slowest answer: " + Duration.ofNanos(slowestNanos), slowestNanos < BOUND.toNanos());
+    }
+
+}
@@ -0,0 +1,78 @@
+package lf.actor;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import lf.message.FleetManagerMsg;
+import lf.model.Vehicle;
+import lf.model.VehicleFields;
+
+/**
+ * With the HASH storage layout a twin writes only the fields that changed -
+ * but only ever relative to what redis holds. A template it was started
+ * from has never been written, so the first write is the whole vehicle.
+ */
+public class VehicleTwinStorageTest {
+
+    private static final Duration RESPONSIVE = Duration.ofMillis(1000);
+
+    // Every twin here is hydrated by its 'manager' - redis is never read.
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(
+        ConfigFactory.parseString(
+            "akka.redis.hostname = \"localhost\"\n"
+            + "akka.redis.port = 1\n"
+            + "akka.redis.storage-layout = \"hash\"\n"
+            + "akka.fleet-manager.metrics.log-interval = 0\n"));
+
+    private static ActorRef<VehicleTwin.Message> createTwin(String entityId, TestProbe<RedisWriteBehind.Message> redisWriter) {
+        return testKit.spawn(VehicleTwin.create(entityId, redisWriter.getRef(),
+            testKit.system().settings().config().getConfig("akka.fleet-manager.twin")));
+    }
+
+    private static Vehicle vehicle(long vehicleIdLong, float mileage) {
+        return Vehicle.createForMileage(Vehicle.longIdToWotId(vehicleIdLong), "10000", mileage);
+    }
+
+    @Test
+    public void writesTheWholeVehicleOverATemplate() {
+        TestProbe<RedisWriteBehind.Message> redisWriter = testKit.createTestProbe();
+        TestProbe<FleetManagerMsg.Message> fleetManager = testKit.createTestProbe();
+        ActorRef<VehicleTwin.Message> twin = createTwin("2001", redisWriter);
+
+        // Brand new vehicle: the manager starts it from a template.
+        twin.tell(new VehicleTwin.Hydrate(Vehicle.createTemplate(Vehicle.longIdToWotId(2001)), false));
+        twin.tell(new VehicleTwin.WotUpdate(vehicle(2001, 10f), fleetManager.getRef()));
+        RedisWriteBehind.Persist first = redisWriter.expectMessageClass(RedisWriteBehind.Persist.class, RESPONSIVE);
+        assertNull(first.changedFields);
+
+        // From then on, only what changed.
+        twin.tell(new VehicleTwin.WotUpdate(vehicle(2001, 20f), fleetManager.getRef()));
+        RedisWriteBehind.Persist second = redisWriter.expectMessageClass(RedisWriteBehind.Persist.class, RESPONSIVE);
+        assertEquals(Collections.singletonMap(VehicleFields.MILEAGE, "20.0"), second.changedFields);
+    }
+
+    @Test
+    public void writesOnlyChangesOverAStoredSnapshot() {
+        TestProbe<RedisWriteBehind.Message> redisWriter = testKit.createTestProbe();
+        TestProbe<FleetManagerMsg.Message> fleetManager = testKit.createTestProbe();
+        ActorRef<VehicleTwin.Message> twin = createTwin("2002", redisWriter);
+
+        twin.tell(new VehicleTwin.Hydrate(vehicle(2002, 10f), true));
+        twin.tell(new VehicleTwin.WotUpdate(vehicle(2002, 30f), fleetManager.getRef()));
+        RedisWriteBehind.Persist persist = redisWriter.expectMessageClass(RedisWriteBehind.Persist.class, RESPONSIVE);
+        assertEquals(Collections.singletonMap(VehicleFields.MILEAGE, "30.0"), persist.changedFields);
+    }
+
+}
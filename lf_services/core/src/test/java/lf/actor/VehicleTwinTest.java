@@ -0,0 +1,147 @@
+package lf.actor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import lf.message.FleetManagerMsg;
+import lf.message.WebPortalMsg;
+import lf.model.Vehicle;
+
+/**
+ * A VehicleTwin's redis and WoT I/O runs on the blocking-io dispatcher: the
+ * twin keeps handling messages while that I/O is stuck.
+ * <p>
+ * Both redis and the vehicle's Exposed Thing are a socket that accepts
+ * connections but never answers - so the twin's read of its stored state,
+ * and its WoT calls, block (until the socket timeout, for redis).
+ */
+public class VehicleTwinTest {
+
+    // Well inside the blocked I/O below - a twin blocked on it would miss this.
+    private static final Duration RESPONSIVE = Duration.ofMillis(1000);
+
+    // Never accept()ed: connections complete (from the backlog), requests are
+    // never answered.
+    private static final ServerSocket silentServer = openSilentServer();
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource(
+        ConfigFactory.parseString(
+            "akka.redis.hostname = \"localhost\"\n"
+            + "akka.redis.port = " + silentServer.getLocalPort() + "\n"
+            + "akka.redis.socket-timeout = 5s\n"
+            + "akka.fleet-manager.metrics.log-interval = 0\n"));
+
+    private static ServerSocket openSilentServer() {
+        try {
+            return new ServerSocket(0);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @AfterClass
+    public static void closeSilentServer() throws IOException {
+        // Resets the pending connections - so the stuck calls fail.
+        silentServer.close();
+    }
+
+    private static Behavior<VehicleTwin.Message> createTwin(String entityId, TestProbe<RedisWriteBehind.Message> redisWriter) {
+        return VehicleTwin.create(entityId, redisWriter.getRef(),
+            testKit.system().settings().config().getConfig("akka.fleet-manager.twin"));
+    }
+
+    private static Vehicle vehicle(long vehicleIdLong, float mileage) {
+        Vehicle vehicle = Vehicle.createForMileage(Vehicle.longIdToWotId(vehicleIdLong), "1", mileage);
+        vehicle.setTdURL("http://localhost:" + silentServer.getLocalPort() + "/" + vehicle.getVehicleId() + "/");
+        return vehicle;
+    }
+
+    @Test
+    public void handlesUpdatesWhileRedisReadIsBlocked() {
+        TestProbe<RedisWriteBehind.Message> redisWriter = testKit.createTestProbe();
+        TestProbe<FleetManagerMsg.Message> fleetManager = testKit.createTestProbe();
+        TestProbe<WebPortalMsg.VehicleToWebP> portal = testKit.createTestProbe();
+        ActorRef<VehicleTwin.Message> twin = testKit.spawn(createTwin("1001", redisWriter));
+
+        // Nothing has given the twin its state - so it starts reading redis.
+        // A read waits for that...
+        twin.tell(new VehicleTwin.GetVehicle(portal.getRef()));
+        portal.expectNoMessage(RESPONSIVE);
+
+        // ... updates don't.
+        twin.tell(new VehicleTwin.WotUpdate(vehicle(1001, 10f), fleetManager.getRef()));
+        FleetManagerMsg.VehicleStateChanged changed
+            = fleetManager.expectMessageClass(FleetManagerMsg.VehicleStateChanged.class, RESPONSIVE);
+        assertEquals(Float.valueOf(10f), changed.vehicle.getMileage());
+        redisWriter.expectMessageClass(RedisWriteBehind.Persist.class, RESPONSIVE);
+
+        // The read (timing out) completes: the waiting read gets the update,
+        // newer than anything stored.
+        assertEquals(Float.valueOf(10f),
+            portal.expectMessageClass(WebPortalMsg.VehicleToWebP.class, Duration.ofSeconds(15)).vehicle.getMileage());
+    }
+
+    @Test
+    public void handlesUpdatesWhileWotCallIsBlocked() {
+        TestProbe<RedisWriteBehind.Message> redisWriter = testKit.createTestProbe();
+        TestProbe<FleetManagerMsg.Message> fleetManager = testKit.createTestProbe();
+        TestProbe<WebPortalMsg.VehicleToWebP> portal = testKit.createTestProbe();
+        ActorRef<VehicleTwin.Message> twin = testKit.spawn(createTwin("1002", redisWriter));
+
+        // First contact: the twin calls the Exposed Thing to set its fleet id.
+        Vehicle firstContact = vehicle(1002, 10f);
+        firstContact.setWotFltIdUpdateRqd(true);
+        twin.tell(new VehicleTwin.WotUpdate(firstContact, fleetManager.getRef()));
+        fleetManager.expectMessageClass(FleetManagerMsg.VehicleStateChanged.class, RESPONSIVE);
+
+        // That call is now stuck - later updates and reads still go through.
+        twin.tell(new VehicleTwin.WotUpdate(vehicle(1002, 20f), fleetManager.getRef()));
+        FleetManagerMsg.VehicleStateChanged changed
+            = fleetManager.expectMessageClass(FleetManagerMsg.VehicleStateChanged.class, RESPONSIVE);
+        assertEquals(Float.valueOf(20f), changed.vehicle.getMileage());
+
+        twin.tell(new VehicleTwin.GetVehicle(portal.getRef()));
+        assertEquals(Float.valueOf(20f), portal.expectMessageClass(WebPortalMsg.VehicleToWebP.class, RESPONSIVE).vehicle.getMileage());
+    }
+
+    @Test
+    public void reportsHydratedStateOnFirstUnchangedUpdate() {
+        TestProbe<RedisWriteBehind.Message> redisWriter = testKit.createTestProbe();
+        TestProbe<FleetManagerMsg.Message> fleetManager = testKit.createTestProbe();
+        TestProbe<WebPortalMsg.VehicleToWebP> portal = testKit.createTestProbe();
+        ActorRef<VehicleTwin.Message> twin = testKit.spawn(createTwin("1003", redisWriter));
+
+        // Started by a read (as after passivation): the redis read times out,
+        // and the twin starts from a template - with no manager to tell. The
+        // read is answered then (never with 'no vehicle').
+        twin.tell(new VehicleTwin.GetVehicle(portal.getRef()));
+        Vehicle hydrated = portal.expectMessageClass(WebPortalMsg.VehicleToWebP.class, Duration.ofSeconds(15)).vehicle;
+        assertNotNull(hydrated);
+
+        // The vehicle reports in with nothing new - its manager is still told.
+        twin.tell(new VehicleTwin.WotUpdate(hydrated, fleetManager.getRef()));
+        assertEquals(hydrated, fleetManager.expectMessageClass(FleetManagerMsg.VehicleStateChanged.class, RESPONSIVE).vehicle);
+
+        // ... once.
+        twin.tell(new VehicleTwin.WotUpdate(hydrated, fleetManager.getRef()));
+        fleetManager.expectNoMessage(RESPONSIVE);
+    }
+
+}
@@ -0,0 +1,106 @@
+package lf.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FleetRoutingIndexTest {
+
+    private static Map<Long, VehicleIdSet> ranges(String... idsByManager) {
+        Map<Long, VehicleIdSet> ranges = new HashMap<Long, VehicleIdSet>();
+        for (int i = 0; i < idsByManager.length; i++) {
+            ranges.put((long) i + 1, VehicleIdSet.parse(idsByManager[i]));
+        }
+        return ranges;
+    }
+
+    @Test
+    public void ownersOfScatteredRuns() {
+        FleetRoutingIndex index = FleetRoutingIndex.of(ranges("0-99, 300-399", "100-199, 250", "400"));
+        assertEquals(5, index.size());
+        assertEquals(1, index.ownerOf(0));
+        assertEquals(1, index.ownerOf(99));
+        assertEquals(2, index.ownerOf(100));
+        assertEquals(2, index.ownerOf(199));
+        assertEquals(FleetRoutingIndex.NO_OWNER, index.ownerOf(200));
+        assertEquals(FleetRoutingIndex.NO_OWNER, index.ownerOf(249));
+        assertEquals(2, index.ownerOf(250));
+        assertEquals(FleetRoutingIndex.NO_OWNER, index.ownerOf(251));
+        assertEquals(1, index.ownerOf(300));
+        assertEquals(1, index.ownerOf(399));
+        assertEquals(3, index.ownerOf(400));
+        assertEquals(FleetRoutingIndex.NO_OWNER, index.ownerOf(401));
+        assertEquals(FleetRoutingIndex.NO_OWNER, index.ownerOf(-1));
+    }
+
+    @Test
+    public void noManagers() {
+        assertEquals(FleetRoutingIndex.NO_OWNER, FleetRoutingIndex.EMPTY.ownerOf(0));
+        FleetRoutingIndex index = FleetRoutingIndex.of(ranges("", ""));
+        assertEquals(0, index.size());
+        assertEquals(FleetRoutingIndex.NO_OWNER, index.ownerOf(0));
+    }
+
+    @Test
+    public void theLongBounds() {
+        FleetRoutingIndex index = FleetRoutingIndex.of(ranges(
+            Long.MIN_VALUE + "--1", "0-" + (Long.MAX_VALUE - 1), Long.toString(Long.MAX_VALUE)));
+        assertEquals(1, index.ownerOf(Long.MIN_VALUE));
+        assertEquals(1, index.ownerOf(-1));
+        assertEquals(2, index.ownerOf(0));
+        assertEquals(2, index.ownerOf(Long.MAX_VALUE - 1));
+        assertEquals(3, index.ownerOf(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overlappingManagersAreRejected() {
+        FleetRoutingIndex.of(ranges("0-99", "200-299", "99-150"));
+    }
+
+    @Test
+    public void adjacentManagersAreNotAnOverlap() {
+        FleetRoutingIndex index = FleetRoutingIndex.of(ranges("0-99", "100-199"));
+        assertEquals(1, index.ownerOf(99));
+        assertEquals(2, index.ownerOf(100));
+    }
+
+    @Test
+    public void matchesALinearScan() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            // Deal a small id space out to a few managers, in short runs, with gaps.
+            Map<Long, VehicleIdSet> ranges = new HashMap<Long, VehicleIdSet>();
+            int managers = 1 + random.nextInt(5);
+            for (long id = -100; id < 100; id += 1 + random.nextInt(8)) {
+                if (random.nextInt(4) == 0) {
+                    continue;  // A gap.
+                }
+                long manager = 1 + random.nextInt(managers);
+                VehicleIdSet ids = ranges.containsKey(manager) ? ranges.get(manager) : VehicleIdSet.EMPTY;
+                ranges.put(manager, ids.union(VehicleIdSet.range(id, id + random.nextInt(8))));
+            }
+            // (Runs dealt to different managers may overlap - trim them apart.)
+            VehicleIdSet taken = VehicleIdSet.EMPTY;
+            for (Map.Entry<Long, VehicleIdSet> entry : ranges.entrySet()) {
+                entry.setValue(entry.getValue().difference(taken));
+                taken = taken.union(entry.getValue());
+            }
+
+            FleetRoutingIndex index = FleetRoutingIndex.of(ranges);
+            for (long id = -120; id < 120; id++) {
+                long expected = FleetRoutingIndex.NO_OWNER;
+                for (Map.Entry<Long, VehicleIdSet> entry : ranges.entrySet()) {
+                    if (entry.getValue().contains(id)) {
+                        expected = entry.getKey();
+                    }
+                }
+                assertEquals("id " + id + " of " + ranges, expected, index.ownerOf(id));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package lf.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.typed.ActorRef;
+import lf.message.FleetManagerMsg;
+import lf.model.Vehicle;
+
+public class FleetRoutingTableTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    private static final ActorRef<FleetManagerMsg.Message> managerA
+        = testKit.<FleetManagerMsg.Message>createTestProbe().getRef();
+    private static final ActorRef<FleetManagerMsg.Message> managerB
+        = testKit.<FleetManagerMsg.Message>createTestProbe().getRef();
+
+    private static FleetRoutingTable table(String idsOfA, String idsOfB) {
+        Map<Long, ActorRef<FleetManagerMsg.Message>> refs = new HashMap<Long, ActorRef<FleetManagerMsg.Message>>();
+        refs.put(1L, managerA);
+        refs.put(2L, managerB);
+        Map<Long, VehicleIdSet> ids = new HashMap<Long, VehicleIdSet>();
+        ids.put(1L, VehicleIdSet.parse(idsOfA));
+        ids.put(2L, VehicleIdSet.parse(idsOfB));
+        return new FleetRoutingTable(refs, ids);
+    }
+
+    private static Vehicle vehicle(long vehicleIdLong, String fleetId) {
+        return Vehicle.createForMileage(Vehicle.longIdToWotId(vehicleIdLong), fleetId, 0f);
+    }
+
+    @Test
+    public void routesOnTheOwnedIdWithoutAFleetId() {
+        FleetRoutingTable table = table("0-99", "100-199");
+        assertEquals(managerA, table.route(vehicle(50, "not_defined")));
+        assertEquals(managerB, table.route(vehicle(150, "not_defined")));
+        assertNull(table.route(vehicle(500, "not_defined")));
+    }
+
+    @Test
+    public void routesOnTheFleetIdWhileItsManagerOwnsTheVehicle() {
+        FleetRoutingTable table = table("0-99", "100-199");
+        assertEquals(managerA, table.route(vehicle(50, "1")));
+        // A stale (unregistered) fleetId falls back to the owner.
+        assertEquals(managerA, table.route(vehicle(50, "3")));
+    }
+
+    @Test
+    public void routesAVehicleWithAnOldFleetIdToItsNewOwner() {
+        // Vehicle 50 was stamped by manager 1 - then moved to manager 2.
+        FleetRoutingTable before = table("0-99", "100-199");
+        assertEquals(managerA, before.route(vehicle(50, "1")));
+
+        FleetRoutingTable after = table("0-49", "50-199");
+        assertEquals(managerB, after.route(vehicle(50, "1")));
+        assertEquals(managerA, after.route(vehicle(49, "1")));
+    }
+
+    @Test
+    public void trustsTheFleetIdOfAManagerYetToPublishItsIds() {
+        Map<Long, ActorRef<FleetManagerMsg.Message>> refs = new HashMap<Long, ActorRef<FleetManagerMsg.Message>>();
+        refs.put(1L, managerA);
+        FleetRoutingTable table = new FleetRoutingTable(refs, new HashMap<Long, VehicleIdSet>());
+        assertEquals(managerA, table.route(vehicle(50, "1")));
+        assertNull(table.route(vehicle(50, "not_defined")));
+    }
+
+}
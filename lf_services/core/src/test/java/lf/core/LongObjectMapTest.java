@@ -0,0 +1,114 @@
+package lf.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void keyZeroIsHeldLikeAnyOther() {
+        LongObjectMap<String> map = new LongObjectMap<String>();
+        assertFalse(map.containsKey(0));
+        assertNull(map.get(0));
+
+        assertNull(map.put(0, "zero"));
+        assertEquals("zero", map.put(0, "nought"));
+        assertTrue(map.containsKey(0));
+        assertEquals("nought", map.get(0));
+        assertEquals(1, map.size());
+        assertEquals(1, map.toHashMap().size());
+        assertEquals("nought", map.toHashMap().get(0L));
+        assertTrue(map.containsValue("nought"));
+
+        assertEquals("nought", map.remove(0));
+        assertNull(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void negativeKeys() {
+        LongObjectMap<String> map = new LongObjectMap<String>();
+        long[] keys = { -1, -2, -1000, Long.MIN_VALUE, Long.MAX_VALUE, 1 };
+        for (long key : keys) {
+            map.put(key, Long.toString(key));
+        }
+        assertEquals(keys.length, map.size());
+        for (long key : keys) {
+            assertEquals(Long.toString(key), map.get(key));
+        }
+        assertEquals("-1", map.remove(-1));
+        assertNull(map.get(-1));
+        assertEquals(Long.toString(Long.MIN_VALUE), map.get(Long.MIN_VALUE));
+        assertEquals(keys.length - 1, map.size());
+    }
+
+    @Test
+    public void removalKeepsTheRestOfAProbeRunReachable() {
+        // Fill well past a resize, then remove every other key - each removal
+        // shifts later entries of its probe run back.
+        LongObjectMap<Long> map = new LongObjectMap<Long>();
+        for (long key = 1; key <= 1000; key++) {
+            map.put(key, key);
+        }
+        for (long key = 1; key <= 1000; key += 2) {
+            assertEquals(Long.valueOf(key), map.remove(key));
+        }
+        assertEquals(500, map.size());
+        for (long key = 1; key <= 1000; key++) {
+            assertEquals((key % 2 == 0) ? Long.valueOf(key) : null, map.get(key));
+        }
+    }
+
+    @Test
+    public void matchesHashMapUnderChurn() {
+        LongObjectMap<Long> map = new LongObjectMap<Long>();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // A small key space (negatives and 0 included), so keys collide,
+            // are overwritten and removed again and again.
+            long key = random.nextInt(512) - 256;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map.toHashMap());
+        for (long key = -256; key < 256; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void copyOfAndClear() {
+        Map<Long, String> source = new HashMap<Long, String>();
+        source.put(0L, "zero");
+        source.put(-5L, "minus five");
+        source.put(7L, "seven");
+        LongObjectMap<String> map = LongObjectMap.copyOf(source);
+        assertEquals(source, map.toHashMap());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0));
+        assertNull(map.get(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValuesAreRejected() {
+        new LongObjectMap<String>().put(1, null);
+    }
+
+}
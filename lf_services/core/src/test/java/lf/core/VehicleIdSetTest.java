@@ -0,0 +1,157 @@
+package lf.core;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VehicleIdSetTest {
+
+    private static final long MIN = Long.MIN_VALUE;
+    private static final long MAX = Long.MAX_VALUE;
+
+    @Test
+    public void parseAndToString() {
+        VehicleIdSet ids = VehicleIdSet.parse(" 3000, 0-2499 ,4000-4099");
+        assertEquals("0-2499, 3000, 4000-4099", ids.toString());
+        assertEquals(2500 + 1 + 100, ids.size());
+        assertEquals(ids, VehicleIdSet.parse(ids.toString()));
+
+        // Negative ids - a leading '-' is a sign, not a range.
+        assertEquals("-10--5, -1", VehicleIdSet.parse("-1, -10--5").toString());
+        assertSame(VehicleIdSet.EMPTY, VehicleIdSet.parse("  "));
+        // An inverted range is empty.
+        assertSame(VehicleIdSet.EMPTY, VehicleIdSet.parse("5-4"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsNonIds() {
+        VehicleIdSet.parse("1-2, three");
+    }
+
+    @Test
+    public void adjacentAndOverlappingRunsMerge() {
+        assertArrayEquals(new long[] { 0, 20 }, VehicleIdSet.parse("0-9, 10-20").getRuns());
+        assertArrayEquals(new long[] { 0, 20 }, VehicleIdSet.parse("5-20, 0-9").getRuns());
+        assertArrayEquals(new long[] { 0, 20 }, VehicleIdSet.parse("0-20, 3-4").getRuns());
+        assertArrayEquals(new long[] { 0, 9, 11, 20 }, VehicleIdSet.parse("0-9, 11-20").getRuns());
+        assertArrayEquals(new long[] { 1, 3 }, VehicleIdSet.of(3, 1, 2, 2).getRuns());
+
+        assertArrayEquals(new long[] { 0, 20 },
+            VehicleIdSet.range(0, 9).union(VehicleIdSet.range(10, 20)).getRuns());
+        assertArrayEquals(new long[] { 0, 20 },
+            VehicleIdSet.range(0, 15).union(VehicleIdSet.range(5, 20)).getRuns());
+        assertArrayEquals(new long[] { 0, 5, 7, 9 },
+            VehicleIdSet.range(0, 9).difference(VehicleIdSet.of(6)).getRuns());
+    }
+
+    @Test
+    public void ofRunsNormalisesWhatComesOffTheWire() {
+        // Unsorted, overlapping, adjacent and empty runs.
+        VehicleIdSet ids = VehicleIdSet.ofRuns(new long[] { 50, 60, 0, 10, 5, 20, 21, 30, 9, 8 });
+        assertArrayEquals(new long[] { 0, 30, 50, 60 }, ids.getRuns());
+        assertEquals(ids, VehicleIdSet.ofRuns(ids.getRuns()));
+        assertSame(VehicleIdSet.EMPTY, VehicleIdSet.ofRuns(null));
+        assertSame(VehicleIdSet.EMPTY, VehicleIdSet.ofRuns(new long[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ofRunsRejectsAnOddLength() {
+        VehicleIdSet.ofRuns(new long[] { 1, 2, 3 });
+    }
+
+    @Test
+    public void theLongBounds() {
+        VehicleIdSet all = VehicleIdSet.range(MIN, MAX);
+        assertTrue(all.contains(MIN));
+        assertTrue(all.contains(MAX));
+        assertEquals(MAX, all.size());  // Saturates.
+
+        // No wrap around when merging at MAX, or cutting at MIN / MAX.
+        assertArrayEquals(new long[] { MAX - 5, MAX },
+            VehicleIdSet.ofRuns(new long[] { MAX - 5, MAX, MAX, MAX, MAX - 1, MAX }).getRuns());
+        assertArrayEquals(new long[] { MIN + 1, MAX - 1 },
+            all.difference(VehicleIdSet.of(MIN, MAX)).getRuns());
+        assertArrayEquals(new long[] { MIN, MIN, MAX, MAX },
+            all.difference(VehicleIdSet.range(MIN + 1, MAX - 1)).getRuns());
+        assertEquals(all, VehicleIdSet.range(MIN, -1).union(VehicleIdSet.range(0, MAX)));
+        assertTrue(all.intersects(VehicleIdSet.of(MAX)));
+        assertFalse(VehicleIdSet.range(MIN, MAX - 1).intersects(VehicleIdSet.of(MAX)));
+
+        VehicleIdSet edges = VehicleIdSet.parse(MIN + "-" + (MIN + 2) + ", " + MAX);
+        assertEquals(edges, VehicleIdSet.parse(edges.toString()));
+        assertEquals(4, edges.size());
+        assertFalse(edges.contains(MIN + 3));
+    }
+
+    @Test
+    public void intersects() {
+        VehicleIdSet ids = VehicleIdSet.parse("0-9, 20-29");
+        assertTrue(ids.intersects(VehicleIdSet.of(9)));
+        assertTrue(ids.intersects(VehicleIdSet.range(15, 20)));
+        assertFalse(ids.intersects(VehicleIdSet.range(10, 19)));
+        assertFalse(ids.intersects(VehicleIdSet.EMPTY));
+        assertFalse(VehicleIdSet.EMPTY.intersects(ids));
+    }
+
+    private static VehicleIdSet randomSet(Random random, TreeSet<Long> expected) {
+        // A few short runs in a small id space, so they overlap and touch.
+        long[] runs = new long[2 * random.nextInt(6)];
+        for (int i = 0; i < runs.length; i += 2) {
+            runs[i] = random.nextInt(200) - 100;
+            runs[i + 1] = runs[i] + random.nextInt(12) - 2;  // Sometimes empty.
+            for (long id = runs[i]; id <= runs[i + 1]; id++) {
+                expected.add(id);
+            }
+        }
+        return VehicleIdSet.ofRuns(runs);
+    }
+
+    private static void assertSameIds(TreeSet<Long> expected, VehicleIdSet ids) {
+        for (long id = -120; id < 120; id++) {
+            assertEquals("id " + id + " of " + ids, expected.contains(id), ids.contains(id));
+        }
+        assertEquals(expected.size(), ids.size());
+        // Normalised: the same ids always make the same runs.
+        long[] raw = new long[2 * expected.size()];
+        int i = 0;
+        for (long id : expected) {
+            raw[i++] = id;
+            raw[i++] = id;
+        }
+        assertArrayEquals(VehicleIdSet.ofRuns(raw).getRuns(), ids.getRuns());
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            TreeSet<Long> expectedA = new TreeSet<Long>();
+            TreeSet<Long> expectedB = new TreeSet<Long>();
+            VehicleIdSet a = randomSet(random, expectedA);
+            VehicleIdSet b = randomSet(random, expectedB);
+            assertSameIds(expectedA, a);
+            assertEquals(a, VehicleIdSet.parse(a.toString()));
+
+            TreeSet<Long> union = new TreeSet<Long>(expectedA);
+            union.addAll(expectedB);
+            assertSameIds(union, a.union(b));
+
+            TreeSet<Long> difference = new TreeSet<Long>(expectedA);
+            difference.removeAll(expectedB);
+            assertSameIds(difference, a.difference(b));
+
+            TreeSet<Long> intersection = new TreeSet<Long>(expectedA);
+            intersection.retainAll(expectedB);
+            assertEquals(!intersection.isEmpty(), a.intersects(b));
+            assertEquals(!intersection.isEmpty(), b.intersects(a));
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package lf.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VehicleFieldsTest {
+
+    private static Vehicle vehicle(float mileage, String doorStatus) {
+        Vehicle vehicle = Vehicle.createForMileage(Vehicle.longIdToWotId(42), "10000", mileage);
+        vehicle.setTdURL("http://bridge/42/");
+        vehicle.setOilLevel(55f);
+        vehicle.setDoorStatus(doorStatus);
+        return vehicle;
+    }
+
+    // What redis holds after the writer applies 'changes' (a null deletes).
+    private static Map<String, String> apply(Map<String, String> stored, Map<String, String> changes) {
+        Map<String, String> result = new LinkedHashMap<String, String>(stored);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                result.remove(change.getKey());
+            }
+            else {
+                result.put(change.getKey(), change.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void roundTrips() {
+        Vehicle vehicle = vehicle(1234.5f, "LOCKED");
+        Vehicle read = VehicleFields.fromFields(VehicleFields.toFields(vehicle));
+        assertEquals(vehicle, read);
+        assertEquals(42, read.getVehicleIdLong());
+    }
+
+    @Test
+    public void diffOfTheStoredStateRebuildsTheNewOne() {
+        Vehicle before = vehicle(1000f, "LOCKED");
+        Vehicle after = vehicle(1001f, "UNLOCKED");
+        Map<String, String> changes = VehicleFields.diff(before, after);
+        assertEquals(2, changes.size());
+        assertTrue(changes.containsKey(VehicleFields.MILEAGE));
+        assertTrue(changes.containsKey(VehicleFields.DOOR_STATUS));
+
+        Map<String, String> stored = apply(VehicleFields.toFields(before), changes);
+        assertEquals(after, VehicleFields.fromFields(stored));
+    }
+
+    @Test
+    public void aClearedFieldIsDeleted() {
+        Vehicle before = vehicle(1000f, "LOCKED");
+        Vehicle after = vehicle(1000f, null);
+        Map<String, String> changes = VehicleFields.diff(before, after);
+        assertTrue(changes.containsKey(VehicleFields.DOOR_STATUS));
+        assertEquals(null, changes.get(VehicleFields.DOOR_STATUS));
+
+        Map<String, String> stored = apply(VehicleFields.toFields(before), changes);
+        assertFalse(stored.containsKey(VehicleFields.DOOR_STATUS));
+        assertEquals(after, VehicleFields.fromFields(stored));
+    }
+
+    @Test
+    public void diffAgainstAnUnstoredTemplateCannotRebuildTheVehicle() {
+        // Why a twin diffs only against what redis actually holds: a diff
+        // against a template (never written) leaves out the id and every
+        // field equal to a template default.
+        Vehicle template = Vehicle.createTemplate(Vehicle.longIdToWotId(42));
+        Vehicle first = vehicle(1000f, "");
+        Map<String, String> changes = VehicleFields.diff(template, first);
+        assertFalse(changes.containsKey(VehicleFields.VEHICLE_ID));
+
+        Vehicle read = VehicleFields.fromFields(apply(new LinkedHashMap<String, String>(), changes));
+        assertEquals(0, read.getVehicleIdLong());
+    }
+
+}
@@ -1,7 +1,7 @@
 package lf.fleetman;
 
 import akka.actor.typed.ActorSystem;
-import lf.actor.FleetlessGuardian;
+import lf.actor.FleetManagerGuardian;
 import lf.core.LeetFServiceStart;
 import lf.message.LeetFServiceGuardianMsg;
 
@@ -24,7 +24,7 @@ public class FleetlessStart extends LeetFServiceStart {
 
     //#actor-system
     final ActorSystem<LeetFServiceGuardianMsg.BootStrap> fleetlessGuardian
-                  = ActorSystem.create(FleetlessGuardian.create(), "leet-fleet", config);
+                  = ActorSystem.create(FleetManagerGuardian.create(), "leet-fleet", config);
     //#actor-system
 
     //#main-send-messages
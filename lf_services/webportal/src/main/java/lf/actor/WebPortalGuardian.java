@@ -2,17 +2,25 @@ package lf.actor;
 
 import java.util.Set;
 
+import com.typesafe.config.Config;
+
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.*;
+import akka.actor.typed.pubsub.Topic;
 import akka.actor.typed.receptionist.Receptionist;
+import lf.core.FleetRoutingTable;
 import lf.message.LFSerialisable;
 import lf.message.VehicleEventMsg;
 import lf.message.WebPortalMsg;
-import lf.model.Vehicle;
+import lf.webportal.VehicleNearCache;
+import lf.webportal.WebPortalRefs;
 
 /**
- * The guardian is the top level actor that bootstraps the WebPortal application
+ * The guardian is the top level actor that bootstraps the WebPortal application.
+ * It spawns and discovers the actors the HTTP routes use, and publishes them
+ * (@see WebPortalRefs) - it is not itself on the request path.
  */
 public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Message> {
 
@@ -53,61 +61,6 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
         }
     }
 
-    // Definitely better ways to do this.
-    public final static class ForwardToWotHandler implements Message, LFSerialisable {
-        public final Vehicle vehicle;
-        public final ActorRef<WebPortalMsg.VehicleToWebP> replyTo;
-
-        public ForwardToWotHandler(
-                Vehicle vehicle, ActorRef<WebPortalMsg.VehicleToWebP> replyTo) {
-            this.vehicle = vehicle;
-            this.replyTo = replyTo;
-        }
-    }
-
-    public final static class ForwardToWebHandler implements Message, LFSerialisable {
-        public final Vehicle vehicle;
-        public final ActorRef<WebPortalMsg.VehicleToWebP> replyTo;
-
-        public ForwardToWebHandler(
-                Vehicle vehicle, ActorRef<WebPortalMsg.VehicleToWebP> replyTo) {
-            this.vehicle = vehicle;
-            this.replyTo = replyTo;
-        }
-    }
-
-    public final static class WebListFleetJson implements Message, LFSerialisable {
-        public final ActorRef<WebPortalMsg.FleetListToWebP> replyTo;
-
-        public WebListFleetJson(ActorRef<WebPortalMsg.FleetListToWebP> replyTo) {
-            this.replyTo = replyTo;
-        }
-    }
-
-    public final static class WebListVehicleJson implements Message, LFSerialisable {
-        public final long managerId;
-        public final ActorRef<WebPortalMsg.VehicleListToWebP> replyTo;
-
-        public WebListVehicleJson(
-                long managerId, ActorRef<WebPortalMsg.VehicleListToWebP> replyTo) {
-            this.managerId = managerId;
-            this.replyTo = replyTo;
-        }
-    }
-
-    public final static class WebGetVehicleJson implements Message, LFSerialisable {
-        public final long managerId;
-        public final long vehicleId;
-        public final ActorRef<WebPortalMsg.VehicleToWebP> replyTo;
-
-        public WebGetVehicleJson(
-                long managerId, long vehicleId, ActorRef<WebPortalMsg.VehicleToWebP> replyTo) {
-            this.managerId = managerId;
-            this.vehicleId = vehicleId;
-            this.replyTo = replyTo;
-        }
-    }
-
     /**
      * Message to handle Listing Response from Receptionist.
      *
@@ -122,10 +75,45 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
         }
     }
 
+    /**
+     * A new routing table from the Registry (@see Registry.SubToRoutingTable).
+     */
+    private static class RoutingTableUpdated implements Message {
+        final FleetRoutingTable routingTable;
+
+        private RoutingTableUpdated(FleetRoutingTable routingTable) {
+            this.routingTable = routingTable;
+        }
+    }
+
+    /**
+     * Vehicle changes published by a fleet manager (via the change topic).
+     */
+    private static class VehicleChangesNotification implements Message {
+        final WebPortalMsg.VehicleChangesToWebP changes;
+
+        private VehicleChangesNotification(WebPortalMsg.VehicleChangesToWebP changes) {
+            this.changes = changes;
+        }
+    }
+
     // ENCAPSULATION:
     public ActorRef<Registry.Message> REGISTRY_REF = null;
     public ActorRef<VehicleWebQuery.Message> VEHICLE_WEB_QUERY_REF = null;
 
+    // Pool of long-lived vehicle event ingestion workers. Consistent-hash
+    // routed on the vehicle id, so each vehicle's updates go through one
+    // worker, in order.
+    private final ActorRef<VehicleEventMsg.Message> eventIngestPool;
+
+    private final VehicleNearCache nearCache;
+
+    // NOTE: The HTTP routes don't message this guardian. They talk to the
+    //       actors above directly - we just keep 'refs' up to date as they are
+    //       spawned/discovered (along with the Registry's routing table).
+    private final WebPortalRefs refs;
+    private final ActorRef<FleetRoutingTable> routingTableAdapter;
+
     // =========================================================================
 
     // CREATE THIS ACTOR
@@ -143,6 +131,8 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
     private WebPortalGuardian(ActorContext<Message> context) {
         super(context);
 
+        this.refs = WebPortalRefs.get(context.getSystem());
+
         // NOTE: It’s only possible to have ONE message adapter per message class to make sure that
         // the number of adapters are not growing unbounded if registered repeatedly. That also
         // means that a registered adapter will replace an existing adapter for the same message
@@ -167,6 +157,19 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
         // The web-portal spawns an actor to track and deal with (read only)
         // queries from the (web) client
         VEHICLE_WEB_QUERY_REF = context.spawn(VehicleWebQuery.create(), "vehicleWebQuery");
+        refs.setVehicleWebQueryRef(VEHICLE_WEB_QUERY_REF);
+
+        // ... and a pool of workers for the (high volume) vehicle updates.
+        Config ingestConfig = context.getSystem().settings().config().getConfig("akka.routes.ingest");
+        Behavior<VehicleEventMsg.Message> eventIngest = Behaviors
+            .supervise(VehicleEventIngest.create(ingestConfig.getDuration("pending-timeout")))
+            .onFailure(SupervisorStrategy.restart());
+        this.eventIngestPool = context.spawn(
+            Routers.pool(ingestConfig.getInt("pool-size"), eventIngest)
+                .withConsistentHashingRouting(
+                    ingestConfig.getInt("virtual-nodes-factor"), WebPortalGuardian::ingestRoutingKey),
+            "eventIngestPool");
+        refs.setEventIngestRef(eventIngestPool);
         //#create-actors
 
         // 2) Subscribe for VehicleWebQuery (list) updates
@@ -181,6 +184,18 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
         //       in a real system one would probably take this approach to cater
         //       for the actor terminating etc.. And it was already coded. So
         //       why not...
+
+        // Keep the near cache (read by the routes) fresh with the changes the
+        // fleet managers publish.
+        ActorRef<Topic.Command<WebPortalMsg.VehicleChangesToWebP>> vehicleChangesTopic = context.spawn(
+            Topic.create(WebPortalMsg.VehicleChangesToWebP.class, WebPortalMsg.VEHICLE_CHANGES_TOPIC),
+            "vehicleChangesTopic");
+        vehicleChangesTopic.tell(Topic.subscribe(
+            context.messageAdapter(WebPortalMsg.VehicleChangesToWebP.class, VehicleChangesNotification::new)));
+        this.nearCache = VehicleNearCache.get(context.getSystem());
+
+        // We subscribe to the routing table once we know where the Registry is.
+        this.routingTableAdapter = context.messageAdapter(FleetRoutingTable.class, RoutingTableUpdated::new);
     }
 
     // =========================================================================
@@ -190,14 +205,9 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
     public Receive<Message> createReceive() {
         return newReceiveBuilder()
                 .onMessage(WebPortalGuardian.BootStrap.class, this::onBootStrap)
-                // .onMessage(WebPortalGuardian.ForwardToHandler.class,
-                // this::onForwardToHandler)
-                .onMessage(WebPortalGuardian.ForwardToWotHandler.class, this::onForwardWotToHandler)
-                .onMessage(WebPortalGuardian.ForwardToWebHandler.class, this::onForwardToWebHandler)
-                .onMessage(WebPortalGuardian.WebListFleetJson.class, this::onWebListFleetJson)
-                .onMessage(WebPortalGuardian.WebListVehicleJson.class, this::onWebListVehiclesJson)
-                // .onMessage(WebPortalGuardian.WebGetVehicle.class, this::onWebGetVehicle)
                 .onMessage(ReceptionistListingResponse.class, this::onReceptionistListing)
+                .onMessage(VehicleChangesNotification.class, this::onVehicleChanges)
+                .onMessage(RoutingTableUpdated.class, this::onRoutingTableUpdated)
 //                .onMessage(VehicleWebQueryListingResponse.class, this::onVehicleWebQueryListing)
                 .build();
     }
@@ -215,50 +225,32 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
         return this;
     }
 
-    // From AKKA HTTP to WoT Handler (i.e. a vehicle update from WoT)
-
-    private Behavior<Message> onForwardWotToHandler(ForwardToWotHandler message) {
-        // Create an (anonymous, disposable) VehicleEvent actor to handle this request.
-        ActorRef<VehicleEventMsg.Message> vehicleEventRef = getContext().spawnAnonymous(VehicleWotEvent.create());  // 'anonymous' actor
-        // ActorRef<VehicleEvent.Message> vehicleEventRef = getContext().spawn(VehicleEvent.create(), "Fred");  // 'normal' named actor
-
-        // Pass the message details (from the HttpServer, via the WebGuardian) to the VehicleEvent actor
-        // NOTE: We're forwarding the 'replyTo' reference of AKKA HTTP. The response to this message
-        //       will be handled there (and not locally in this Guardian).
-        vehicleEventRef.tell(new VehicleEventMsg.EventFromWebP(message.vehicle, message.replyTo, REGISTRY_REF));
-        return this;
+    /**
+     * The ingestion pool's hash key. Only EventFromWebP goes through the router
+     * (the replies go to the worker directly).
+     */
+    private static String ingestRoutingKey(VehicleEventMsg.Message message) {
+        if (message instanceof VehicleEventMsg.EventFromWebP) {
+            return Long.toString(((VehicleEventMsg.EventFromWebP) message).vehicle.getVehicleIdLong());
+        }
+        return "";
     }
 
-    // From AKKA HTTP to Web Handler (i.e. a vehicle update from Web Client)
-
-    private Behavior<Message> onForwardToWebHandler(ForwardToWebHandler message) {
-        // Create an (anonymous, disposable) VehicleEvent actor to handle this request.
-        ActorRef<VehicleEventMsg.Message> vehicleEventRef = getContext().spawnAnonymous(VehicleWebEvent.create());  // 'anonymous' actor
-        // ActorRef<VehicleEvent.Message> vehicleEventRef = getContext().spawn(VehicleEvent.create(), "Fred");  // 'normal' named actor
+    // From the Fleet Managers (change topic)
 
-        // Pass the message details (from the HttpServer, via the WebGuardian) to the VehicleEvent actor
-        // NOTE: We're forwarding the 'replyTo' reference of AKKA HTTP. The response to this message
-        //       will be handled there (and not locally in this Guardian).
-        vehicleEventRef.tell(new VehicleEventMsg.EventFromWebP(message.vehicle, message.replyTo, REGISTRY_REF));
+    private Behavior<Message> onVehicleChanges(VehicleChangesNotification msg) {
+        nearCache.putVehicles(msg.changes.fleetManagerId, msg.changes.vehicles);
         return this;
     }
 
-    private Behavior<Message> onWebListFleetJson(WebListFleetJson message) {
-        REGISTRY_REF.tell(new Registry.ListFleetMgrsJson(message.replyTo));
-        return this;
-    }
+    // From Registry
 
-    private Behavior<Message> onWebListVehiclesJson(WebListVehicleJson message) {
-        VEHICLE_WEB_QUERY_REF.tell(new VehicleWebQuery.ListVehiclesJson(message.managerId, message.replyTo));
+    private Behavior<Message> onRoutingTableUpdated(RoutingTableUpdated msg) {
+        getContext().getLog().debug("Registry Notification (Routing Table Update)");
+        refs.setRoutingTable(msg.routingTable);
         return this;
     }
 
-    // private Behavior<Message> onWebGetVehicle(WebGetVehicle message) {
-    //     ActorRef<VehicleEventMsg.Message> vehicleEventRef = getContext().spawnAnonymous(VehicleWotEvent.create());  // 'anonymous' actor
-    //     vehicleEventRef.tell(new VehicleEventMsg.EventFromWebP(message, message.replyTo, REGISTRY_REF));
-    //     return this;
-    // }
-
     // From Receptionist
 
     /**
@@ -282,6 +274,9 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
             registryInstances.forEach(
                 registryRef -> {
                     REGISTRY_REF = registryRef;
+                    refs.setRegistryRef(registryRef);
+                    // A new (or restarted) Registry doesn't know us - (re)subscribe.
+                    REGISTRY_REF.tell(new Registry.SubToRoutingTable(routingTableAdapter));
                 });
             listingProcessed = true;
         }
@@ -298,6 +293,7 @@ public class WebPortalGuardian extends AbstractBehavior<WebPortalGuardian.Messag
                 vwqInstances.forEach(
                         vwqRef -> {
                             VEHICLE_WEB_QUERY_REF = vwqRef;
+                            refs.setVehicleWebQueryRef(vwqRef);
                         });
             }
             catch (IllegalArgumentException iae) {
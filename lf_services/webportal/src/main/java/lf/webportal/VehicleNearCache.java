@@ -0,0 +1,208 @@
+package lf.webportal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import lf.model.Vehicle;
+import lf.model.VehicleListQuery;
+
+/**
+ * Near cache of vehicle state for the web portal's read routes.
+ * <p>
+ * Dashboards refresh every few seconds, for every fleet. Without this each
+ * refresh is a scatter-gather across the cluster. Instead:
+ * <ul>
+ *  <li>A full vehicle list, once fetched, is kept (per fleet manager) and
+ *      served from here for up to 'max-staleness'.</li>
+ *  <li>In the meantime the fleet managers push every change they see (@see
+ *      lf.actor.VehicleChangeFeed), so what is served is current - the
+ *      staleness bound only covers lost notifications and quiet vehicles.</li>
+ *  <li>The cache holds at most 'max-entries' vehicles. The least recently
+ *      updated go first; evicting one invalidates its fleet's list.</li>
+ * </ul>
+ * One per actor system (an Extension, like lf.core.RedisPool): shared by the
+ * HTTP routes (reads) and the WebPortalGuardian (change notifications).
+ * Settings live under "akka.routes.near-cache".
+ */
+public class VehicleNearCache implements Extension {
+
+    private static final class Entry {
+        final long fleetManagerId;
+        final Vehicle vehicle;
+        final long updatedAt;  // System.nanoTime()
+
+        Entry(long fleetManagerId, Vehicle vehicle, long updatedAt) {
+            this.fleetManagerId = fleetManagerId;
+            this.vehicle = vehicle;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxStalenessNanos;
+
+    // Vehicle id to entry, least recently updated first (an update re-inserts).
+    private final LinkedHashMap<Long, Entry> entries;
+    // Fleet manager id to when its full list was last fetched. Present only
+    // while every vehicle in that list is still cached.
+    private final HashMap<Long, Long> fleetsLoadedAt = new HashMap<Long, Long>();
+
+    public static class Id extends ExtensionId<VehicleNearCache> {
+
+        private static final Id instance = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public VehicleNearCache createExtension(ActorSystem<?> system) {
+            return new VehicleNearCache(system);
+        }
+
+        public static VehicleNearCache get(ActorSystem<?> system) {
+            return instance.apply(system);
+        }
+    }
+
+    public static VehicleNearCache get(ActorSystem<?> system) {
+        return Id.get(system);
+    }
+
+    private VehicleNearCache(ActorSystem<?> system) {
+        Config config = system.settings().config().getConfig("akka.routes.near-cache");
+        this.enabled = config.getBoolean("enabled");
+        this.maxEntries = config.getInt("max-entries");
+        this.maxStalenessNanos = config.getDuration("max-staleness").toNanos();
+
+        this.entries = new LinkedHashMap<Long, Entry>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > maxEntries) {
+                    fleetsLoadedAt.remove(eldest.getValue().fleetManagerId);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return The cached vehicle list for this fleet manager, or null if there
+     *         isn't a complete one younger than 'max-staleness'.
+     */
+    public synchronized List<Vehicle> getFleet(long fleetManagerId) {
+        if (!enabled) {
+            return null;
+        }
+        Long loadedAt = fleetsLoadedAt.get(fleetManagerId);
+        if (loadedAt == null || isStale(loadedAt, System.nanoTime())) {
+            return null;
+        }
+        List<Vehicle> vehicles = new ArrayList<Vehicle>();
+        for (Entry entry : entries.values()) {
+            if (entry.fleetManagerId == fleetManagerId) {
+                vehicles.add(entry.vehicle);
+            }
+        }
+        return vehicles;
+    }
+
+    /**
+     * Run a list query against the cached fleet (as the fleet manager would).
+     * @return The page, or null if the fleet isn't cached (@see getFleet).
+     */
+    public synchronized VehicleListQuery.Page selectFleet(long fleetManagerId, VehicleListQuery query) {
+        List<Vehicle> vehicles = getFleet(fleetManagerId);
+        if (vehicles == null) {
+            return null;
+        }
+        TreeMap<Long, Vehicle> byId = new TreeMap<Long, Vehicle>();
+        for (Vehicle vehicle : vehicles) {
+            byId.put(vehicle.getVehicleIdLong(), vehicle);
+        }
+        return query.select(byId);
+    }
+
+    /**
+     * Replace everything cached for this fleet manager with a freshly fetched
+     * (complete) list.
+     */
+    public synchronized void putFleet(long fleetManagerId, List<Vehicle> vehicles) {
+        if (!enabled) {
+            return;
+        }
+        // Vehicles missing from the new list have gone away.
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().fleetManagerId == fleetManagerId) {
+                it.remove();
+            }
+        }
+        long now = System.nanoTime();
+        if (vehicles.size() > maxEntries) {
+            // Could never be served complete - just keep what fits.
+            fleetsLoadedAt.remove(fleetManagerId);
+            for (Vehicle vehicle : vehicles.subList(0, maxEntries)) {
+                put(fleetManagerId, vehicle, now);
+            }
+            return;
+        }
+        for (Vehicle vehicle : vehicles) {
+            put(fleetManagerId, vehicle, now);
+        }
+        fleetsLoadedAt.put(fleetManagerId, now);
+    }
+
+    /**
+     * @return The cached vehicle, or null if it isn't cached or was last
+     *         updated more than 'max-staleness' ago.
+     */
+    public synchronized Vehicle getVehicle(long fleetManagerId, long vehicleId) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.get(vehicleId);
+        if (entry == null || entry.fleetManagerId != fleetManagerId || isStale(entry.updatedAt, System.nanoTime())) {
+            return null;
+        }
+        return entry.vehicle;
+    }
+
+    /**
+     * Apply changed vehicles (pushed by a fleet manager, or read directly).
+     */
+    public synchronized void putVehicles(long fleetManagerId, List<Vehicle> vehicles) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Vehicle vehicle : vehicles) {
+            put(fleetManagerId, vehicle, now);
+        }
+    }
+
+    private void put(long fleetManagerId, Vehicle vehicle, long now) {
+        long vehicleId = vehicle.getVehicleIdLong();
+        // Remove first, so the entry moves to the (most recently updated) tail.
+        entries.remove(vehicleId);
+        entries.put(vehicleId, new Entry(fleetManagerId, vehicle, now));
+    }
+
+    private boolean isStale(long since, long now) {
+        return now - since > maxStalenessNanos;
+    }
+
+}
@@ -0,0 +1,133 @@
+package lf.webportal;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import lf.actor.Registry;
+import lf.actor.VehicleWebQuery;
+import lf.core.FleetRoutingTable;
+import lf.message.FleetManagerMsg;
+import lf.message.VehicleEventMsg;
+import lf.model.Vehicle;
+
+/**
+ * The actors the HTTP routes talk to, as discovered (or spawned) by the
+ * WebPortalGuardian: the Registry, the VehicleWebQuery actor, the vehicle
+ * event ingestion pool - and the Registry's routing table.
+ * <p>
+ * The guardian writes, the routes read. The routes then message these actors
+ * directly, so requests are never serialised through the guardian's mailbox.
+ * Each field is swapped whole (refs and tables are immutable) so readers on
+ * the HTTP threads always see a consistent value.
+ * <p>
+ * One per actor system (an Extension, like VehicleNearCache).
+ */
+public class WebPortalRefs implements Extension {
+
+    private volatile ActorRef<Registry.Message> registryRef = null;
+    private volatile ActorRef<VehicleWebQuery.Message> vehicleWebQueryRef = null;
+    private volatile ActorRef<VehicleEventMsg.Message> eventIngestRef = null;
+    private volatile FleetRoutingTable routingTable = FleetRoutingTable.EMPTY;
+
+    public static class Id extends ExtensionId<WebPortalRefs> {
+
+        private static final Id instance = new Id();
+
+        private Id() {
+        }
+
+        @Override
+        public WebPortalRefs createExtension(ActorSystem<?> system) {
+            return new WebPortalRefs();
+        }
+
+        public static WebPortalRefs get(ActorSystem<?> system) {
+            return instance.apply(system);
+        }
+    }
+
+    public static WebPortalRefs get(ActorSystem<?> system) {
+        return Id.get(system);
+    }
+
+    private WebPortalRefs() {
+    }
+
+    /**
+     * @return The Registry, or null if it hasn't been discovered (yet).
+     */
+    public ActorRef<Registry.Message> getRegistryRef() {
+        return registryRef;
+    }
+
+    /**
+     * @return The Registry.
+     * @throws WebPortalRefsNotReadyException If it hasn't been discovered (yet).
+     */
+    public ActorRef<Registry.Message> requireRegistryRef() {
+        return require(registryRef, "Registry");
+    }
+
+    public void setRegistryRef(ActorRef<Registry.Message> registryRef) {
+        this.registryRef = registryRef;
+    }
+
+    /**
+     * @return The VehicleWebQuery actor, or null if it hasn't been discovered (yet).
+     */
+    public ActorRef<VehicleWebQuery.Message> getVehicleWebQueryRef() {
+        return vehicleWebQueryRef;
+    }
+
+    /**
+     * @return The VehicleWebQuery actor.
+     * @throws WebPortalRefsNotReadyException If it hasn't been discovered (yet).
+     */
+    public ActorRef<VehicleWebQuery.Message> requireVehicleWebQueryRef() {
+        return require(vehicleWebQueryRef, "Vehicle query");
+    }
+
+    public void setVehicleWebQueryRef(ActorRef<VehicleWebQuery.Message> vehicleWebQueryRef) {
+        this.vehicleWebQueryRef = vehicleWebQueryRef;
+    }
+
+    /**
+     * @return The event ingestion pool, or null if it hasn't been spawned (yet).
+     */
+    public ActorRef<VehicleEventMsg.Message> getEventIngestRef() {
+        return eventIngestRef;
+    }
+
+    /**
+     * @return The event ingestion pool.
+     * @throws WebPortalRefsNotReadyException If it hasn't been spawned (yet).
+     */
+    public ActorRef<VehicleEventMsg.Message> requireEventIngestRef() {
+        return require(eventIngestRef, "Event ingestion");
+    }
+
+    public void setEventIngestRef(ActorRef<VehicleEventMsg.Message> eventIngestRef) {
+        this.eventIngestRef = eventIngestRef;
+    }
+
+    private static <T> ActorRef<T> require(ActorRef<T> ref, String what) {
+        if (ref == null) {
+            throw new WebPortalRefsNotReadyException(what);
+        }
+        return ref;
+    }
+
+    public void setRoutingTable(FleetRoutingTable routingTable) {
+        this.routingTable = routingTable;
+    }
+
+    /**
+     * @return The FleetManager this vehicle's events go to, or null if the
+     *         routing table doesn't know (the Registry must be asked).
+     */
+    public ActorRef<FleetManagerMsg.Message> route(Vehicle vehicle) {
+        return routingTable.route(vehicle);
+    }
+
+}
@@ -0,0 +1,14 @@
+package lf.webportal;
+
+/**
+ * An actor the routes need hasn't been discovered (or spawned) yet - the
+ * portal is still starting up, or has lost sight of the Registry. The routes
+ * answer 503: the client should retry.
+ */
+public class WebPortalRefsNotReadyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public WebPortalRefsNotReadyException(String what) {
+        super(what + " not available (yet)");
+    }
+}
@@ -1,11 +1,24 @@
 package lf.webportal;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import com.typesafe.config.Config;
+
+import akka.NotUsed;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Scheduler;
@@ -14,16 +27,35 @@ import akka.http.javadsl.marshallers.jackson.Jackson;
 
 import static akka.http.javadsl.server.Directives.*;
 
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RawHeader;
 import akka.http.javadsl.server.Directives;
 import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.RejectionHandler;
 import akka.http.javadsl.server.Route;
 import akka.http.javadsl.unmarshalling.StringUnmarshallers;
-import lf.actor.WebPortalGuardian;
+import akka.japi.Pair;
+import akka.stream.CompletionStrategy;
+import akka.stream.StreamLimitReachedException;
+import akka.stream.javadsl.JsonFraming;
+import akka.stream.javadsl.Source;
+import akka.stream.typed.javadsl.ActorSource;
+import akka.util.ByteString;
+import lf.actor.Registry;
+import lf.actor.VehicleWebQuery;
+import lf.core.VehicleIdSet;
+import lf.message.FleetManagerMsg;
+import lf.message.VehicleEventMsg;
 import lf.message.WebPortalMsg;
+import lf.model.JsonVehicleCodec;
 import lf.model.Vehicle;
+import lf.model.VehicleListQuery;
 
 import static ch.megard.akka.http.cors.javadsl.CorsDirectives.cors;
 import static ch.megard.akka.http.cors.javadsl.CorsDirectives.corsRejectionHandler;
@@ -34,16 +66,65 @@ import static ch.megard.akka.http.cors.javadsl.CorsDirectives.corsRejectionHandl
 // #user-routes-class
 public class WebPortalRoutes extends WebPortalMsg {
 
-        private final ActorRef<WebPortalGuardian.Message> webPortalGuardianRef; // We can use this actor to spawn more
-        // actors...
+        // Newline delimited JSON (one vehicle per line) for streamed lists.
+        private static final ContentType NDJSON = ContentTypes.create(
+                MediaTypes.customWithFixedCharset("application", "x-ndjson", HttpCharsets.UTF_8,
+                                Collections.emptyMap(), true));
+        private static final ByteString NEWLINE = ByteString.fromString("\n");
+        // Longest vehicle (its JSON) accepted in a /wot/batch body.
+        private static final int MAX_BATCH_VEHICLE_BYTES = 64 * 1024;
+        // Paged vehicle lists: pass this back as 'after' for the next page.
+        private static final String NEXT_PAGE_HEADER = "X-Next-After";
+
+        private final ActorSystem<?> system;
+        // The actors we send requests to (kept current by the WebPortalGuardian).
+        private final WebPortalRefs refs;
         private final Duration askTimeout;
         private final Scheduler scheduler;
+        private final int maxWotBatchSize;
+        // Vehicles of one /wot/batch request split by fleet manager at a time.
+        private final int wotBatchGroupSize;
+        // Jobs (fleet manager shares, or single updates) of one /wot/batch
+        // request in the ingest queue at once.
+        private final int wotBatchParallelism;
+        // Every /wot update goes through here (bounded - @see WotIngestQueue).
+        private final WotIngestQueue wotIngestQueue;
+        // The 'accepted' ack mode: /wot answers 202 once the update is queued.
+        private final boolean wotAckOnAccept;
+        // Read routes are served from here when it is fresh enough.
+        private final VehicleNearCache nearCache;
 
         // Constructor...
-        public WebPortalRoutes(ActorSystem<?> system, ActorRef<WebPortalGuardian.Message> webPortalGuardianRef) {
-                this.webPortalGuardianRef = webPortalGuardianRef;
+        public WebPortalRoutes(ActorSystem<?> system) {
+                this.system = system;
+                this.refs = WebPortalRefs.get(system);
                 this.scheduler = system.scheduler();
                 this.askTimeout = system.settings().config().getDuration("akka.routes.ask-timeout");
+                this.nearCache = VehicleNearCache.get(system);
+                this.maxWotBatchSize = system.settings().config().getInt("akka.routes.ingest.max-batch-size");
+                Config ingestConfig = system.settings().config().getConfig("akka.routes.ingest");
+                this.wotBatchParallelism = ingestConfig.getInt("queue.parallelism");
+                this.wotBatchGroupSize = ingestConfig.getInt("batch-group-size");
+                switch (ingestConfig.getString("ack-mode")) {
+                        case "complete":
+                                this.wotAckOnAccept = false;
+                                break;
+                        case "accepted":
+                                this.wotAckOnAccept = true;
+                                break;
+                        default:
+                                throw new IllegalArgumentException("Unknown akka.routes.ingest.ack-mode: "
+                                        + ingestConfig.getString("ack-mode"));
+                }
+                // An update dropped from the queue under drop-oldest is never
+                // answered - only acceptable when /wot doesn't wait for an answer.
+                if (!wotAckOnAccept && WotIngestQueue.OverflowPolicy.forName(ingestConfig.getString("queue.overflow"))
+                                == WotIngestQueue.OverflowPolicy.DROP_OLDEST) {
+                        throw new IllegalArgumentException(
+                                "akka.routes.ingest.queue.overflow = drop-oldest needs ack-mode = accepted");
+                }
+                this.wotIngestQueue = new WotIngestQueue(system, ingestConfig.getConfig("queue"),
+                        vehicle -> vehicleEvent(vehicle, VehicleEventMsg.Source.WOT));
         }
 
         // ------------------------------------------------------------
@@ -76,28 +157,321 @@ public class WebPortalRoutes extends WebPortalMsg {
         // man...", ref), askTimeout, scheduler);
         // }
 
-        private CompletionStage<WebPortalMsg.VehicleToWebP> vehicleToWotHandlerViaGuardian(Vehicle vehicle) {
-                return AskPattern.ask(webPortalGuardianRef, ref -> new WebPortalGuardian.ForwardToWotHandler(vehicle, ref),
-                                askTimeout, scheduler);
+        /**
+         * A vehicle update was lost on its way (its ingest worker was
+         * restarted with the update in flight). The routes answer 503: the
+         * client should retry.
+         */
+        public static class VehicleEventLostException extends RuntimeException {
+                private static final long serialVersionUID = 1L;
+
+                public VehicleEventLostException() {
+                        super("Vehicle update lost. Retry later.");
+                }
         }
 
-        private CompletionStage<WebPortalMsg.VehicleToWebP> vehicleToWebHandlerViaGuardian(Vehicle vehicle) {
-                return AskPattern.ask(webPortalGuardianRef, ref -> new WebPortalGuardian.ForwardToWebHandler(vehicle, ref),
+        /**
+         * Hand a vehicle update to the ingestion pool. The owning fleet manager
+         * is looked up here (in the routing table) when possible - otherwise the
+         * worker will ask the Registry.
+         *
+         * @return Fails with a VehicleEventLostException (a 503) if the worker
+         *         lost the update (it was restarted with the update in flight).
+         */
+        private CompletionStage<WebPortalMsg.VehicleToWebP> vehicleEvent(Vehicle vehicle, VehicleEventMsg.Source source) {
+                ActorRef<VehicleEventMsg.Message> eventIngestRef = refs.requireEventIngestRef();
+                ActorRef<FleetManagerMsg.Message> fleetManagerRef = refs.route(vehicle);
+                ActorRef<Registry.Message> registryRef = (fleetManagerRef != null)
+                                ? refs.getRegistryRef()
+                                : refs.requireRegistryRef();
+                CompletableFuture<WebPortalMsg.VehicleToWebP> result = new CompletableFuture<WebPortalMsg.VehicleToWebP>();
+                // NOTE: Failed directly (not thrown from a stage) so the route's
+                //       exception handler sees the exception itself.
+                AskPattern.ask(eventIngestRef,
+                                (ActorRef<WebPortalMsg.VehicleToWebP> ref) ->
+                                        new VehicleEventMsg.EventFromWebP(vehicle, ref, registryRef, fleetManagerRef, source),
+                                askTimeout, scheduler)
+                        .whenComplete((reply, failure) -> {
+                                if (failure != null) {
+                                        result.completeExceptionally(failure);
+                                }
+                                else if (reply.vehicle == null) {
+                                        result.completeExceptionally(new VehicleEventLostException());
+                                }
+                                else {
+                                        result.complete(reply);
+                                }
+                        });
+                return result;
+        }
+
+        /**
+         * A WoT update, through the ingest queue. By default we answer once the
+         * fleet manager has handled it; in the 'accepted' ack mode as soon as
+         * it is queued (202). Either way 503 if the queue won't take it.
+         */
+        private Route wotUpdate(Vehicle vehicle) {
+                if (vehicle.getVehicleIdLong() == 0) {
+                        throw new IllegalArgumentException("Invalid vehicleId: " + vehicle.getVehicleId());
+                }
+                if (wotAckOnAccept) {
+                        return onSuccess(wotIngestQueue.offer(vehicle),
+                                queued -> queued
+                                        ? complete(StatusCodes.ACCEPTED)
+                                        : complete(StatusCodes.SERVICE_UNAVAILABLE, "Too many WoT updates queued. Retry later."));
+                }
+                return onSuccess(wotIngestQueue.process(vehicle),
+                        theMessage -> complete(StatusCodes.OK, theMessage.vehicle, Jackson.marshaller()));
+        }
+
+        /**
+         * Apply a batch of WoT updates: a JSON array of vehicles, or newline
+         * delimited JSON (one vehicle per line). The body is read a vehicle at a
+         * time as it arrives, in groups of up to batch-group-size. Each group is
+         * split by owning fleet manager (from the routing table), and each
+         * manager gets its share as one ProcessVehicleWotUpdateBatch - one queue
+         * slot and one ask for the lot, through the same bounded ingest queue
+         * as /wot. Vehicles with no known owner go through the queue one by
+         * one (so the Registry is asked). An update the queue refuses (or
+         * nobody answers in time) is counted as rejected. In the 'accepted' ack
+         * mode each group is only queued - the vehicles come back as sent.
+         * <p>
+         * NOTE: A group goes straight to its manager, not through the ingestion
+         *       pool - so an update in a batch isn't ordered against a /wot
+         *       update for the same vehicle sent at the same time.
+         *
+         * @return Fails with an IllegalArgumentException (a 400) at a vehicle
+         *         that isn't valid JSON, or past max-batch-size vehicles. The
+         *         groups before it are still applied.
+         */
+        private CompletionStage<WebPortalMsg.VehicleBatchToWebP> vehicleBatch(Source<ByteString, ?> body) {
+                return body
+                        // Picks the objects out of an array or a stream of them alike.
+                        .via(JsonFraming.objectScanner(MAX_BATCH_VEHICLE_BYTES))
+                        .limit(maxWotBatchSize)
+                        .map(WebPortalRoutes::batchVehicleFrom)
+                        .mapError(akka.stream.scaladsl.Framing.FramingException.class, ex -> new IllegalArgumentException(
+                                "Invalid vehicle batch: " + ex.getMessage()))
+                        .mapError(StreamLimitReachedException.class, ex -> new IllegalArgumentException(
+                                "Too many vehicles in batch (max " + maxWotBatchSize + ")"))
+                        .grouped(wotBatchGroupSize)
+                        .mapConcat(this::byFleetManager)
+                        .mapAsync(wotBatchParallelism, group -> batchUpdate(group.first(), group.second()))
+                        .runFold(new WebPortalMsg.VehicleBatchToWebP(new ArrayList<Vehicle>(), 0), (batch, applied) -> {
+                                batch.vehicles.addAll(applied.vehicles);
+                                return new WebPortalMsg.VehicleBatchToWebP(batch.vehicles, batch.rejected + applied.rejected);
+                        }, system);
+        }
+
+        /**
+         * Split a group of updates by owning fleet manager. Those with no known
+         * owner (or no valid id) are keyed on null.
+         */
+        private List<Pair<ActorRef<FleetManagerMsg.Message>, List<Vehicle>>> byFleetManager(List<Vehicle> group) {
+                LinkedHashMap<ActorRef<FleetManagerMsg.Message>, List<Vehicle>> byManager =
+                        new LinkedHashMap<ActorRef<FleetManagerMsg.Message>, List<Vehicle>>();
+                for (Vehicle vehicle : group) {
+                        ActorRef<FleetManagerMsg.Message> fleetManagerRef =
+                                (vehicle.getVehicleIdLong() == 0) ? null : refs.route(vehicle);
+                        byManager.computeIfAbsent(fleetManagerRef, ref -> new ArrayList<Vehicle>()).add(vehicle);
+                }
+                List<Pair<ActorRef<FleetManagerMsg.Message>, List<Vehicle>>> split =
+                        new ArrayList<Pair<ActorRef<FleetManagerMsg.Message>, List<Vehicle>>>(byManager.size());
+                byManager.forEach((fleetManagerRef, vehicles) -> split.add(Pair.create(fleetManagerRef, vehicles)));
+                return split;
+        }
+
+        /**
+         * One fleet manager's share of a batch, through the ingest queue as one
+         * job. Without a manager, each update goes through on its own.
+         * @return The vehicles applied (or queued), and how many were not.
+         */
+        private CompletionStage<WebPortalMsg.VehicleBatchToWebP> batchUpdate(
+                        ActorRef<FleetManagerMsg.Message> fleetManagerRef, List<Vehicle> vehicles) {
+                if (fleetManagerRef == null) {
+                        return singleUpdates(vehicles);
+                }
+                Supplier<CompletionStage<WebPortalMsg.VehicleBatchToWebP>> ask = () -> AskPattern.ask(fleetManagerRef,
+                                (ActorRef<WebPortalMsg.VehicleBatchToWebP> ref) ->
+                                        new FleetManagerMsg.ProcessVehicleWotUpdateBatch(vehicles, ref),
                                 askTimeout, scheduler);
+                WebPortalMsg.VehicleBatchToWebP allRejected =
+                        new WebPortalMsg.VehicleBatchToWebP(Collections.<Vehicle>emptyList(), vehicles.size());
+                if (wotAckOnAccept) {
+                        return wotIngestQueue.offer(ask)
+                                .thenApply(queued -> queued ? new WebPortalMsg.VehicleBatchToWebP(vehicles, 0) : allRejected);
+                }
+                return wotIngestQueue.process(ask)
+                        .handle((reply, failure) -> (failure == null) ? reply : allRejected);
+        }
+
+        /**
+         * Updates of a batch with no known owner, through the ingest queue one
+         * by one.
+         */
+        private CompletionStage<WebPortalMsg.VehicleBatchToWebP> singleUpdates(List<Vehicle> vehicles) {
+                List<CompletableFuture<Optional<Vehicle>>> updates = new ArrayList<CompletableFuture<Optional<Vehicle>>>();
+                for (Vehicle vehicle : vehicles) {
+                        updates.add(singleUpdate(vehicle).toCompletableFuture());
+                }
+                return CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                        List<Vehicle> applied = new ArrayList<Vehicle>();
+                        for (CompletableFuture<Optional<Vehicle>> update : updates) {
+                                update.join().ifPresent(applied::add);
+                        }
+                        return new WebPortalMsg.VehicleBatchToWebP(applied, vehicles.size() - applied.size());
+                });
+        }
+
+        /**
+         * One update of a batch, through the ingest queue.
+         * @return The vehicle if it was applied (or queued), else empty.
+         */
+        private CompletionStage<Optional<Vehicle>> singleUpdate(Vehicle vehicle) {
+                if (vehicle.getVehicleIdLong() == 0) {
+                        return CompletableFuture.completedFuture(Optional.empty());
+                }
+                if (wotAckOnAccept) {
+                        return wotIngestQueue.offer(vehicle)
+                                .thenApply(queued -> queued ? Optional.of(vehicle) : Optional.<Vehicle>empty());
+                }
+                return wotIngestQueue.process(vehicle)
+                        .handle((reply, failure) -> (failure == null) ? Optional.of(reply.vehicle) : Optional.<Vehicle>empty());
+        }
+
+        /**
+         * One vehicle of a /wot/batch body.
+         * @throws IllegalArgumentException (a 400) if it isn't a vehicle.
+         */
+        private static Vehicle batchVehicleFrom(ByteString json) {
+                try {
+                        return JsonVehicleCodec.INSTANCE.decode(json.toArray());
+                }
+                catch (IOException ioe) {
+                        throw new IllegalArgumentException("Invalid vehicle in batch: " + ioe.getMessage());
+                }
         }
 
         private CompletionStage<WebPortalMsg.FleetListToWebP> requestFleetList() {
-                return AskPattern.ask(webPortalGuardianRef, ref -> new WebPortalGuardian.WebListFleetJson(ref),
-                                askTimeout, scheduler);
+                return AskPattern.ask(refs.requireRegistryRef(),
+                                ref -> new Registry.ListFleetMgrsJson(ref), askTimeout, scheduler);
         }
 
-        private CompletionStage<WebPortalMsg.VehicleListToWebP> requestVehicleList(long managerId) {
-                return AskPattern.ask(webPortalGuardianRef, ref -> new WebPortalGuardian.WebListVehicleJson(managerId, ref),
-                                askTimeout, scheduler);
+        private CompletionStage<WebPortalMsg.VehicleListToWebP> requestVehicleList(long managerId, VehicleListQuery query) {
+                VehicleListQuery.Page cached = nearCache.selectFleet(managerId, query);
+                if (cached != null) {
+                        return CompletableFuture.completedFuture(
+                                new WebPortalMsg.VehicleListToWebP(cached.vehicles, cached.nextAfter));
+                }
+                CompletionStage<WebPortalMsg.VehicleListToWebP> reply = AskPattern.ask(
+                                refs.requireVehicleWebQueryRef(),
+                                ref -> new VehicleWebQuery.ListVehiclesJson(managerId, query, ref), askTimeout, scheduler);
+                if (!query.isAll()) {
+                        return reply;  // Only a complete, unfiltered list can seed the cache.
+                }
+                return reply.thenApply(theMessage -> {
+                        nearCache.putFleet(managerId, theMessage.vehicles);
+                        return theMessage;
+                });
+        }
+
+        /**
+         * Build a list query from the request parameters, e.g.
+         * ?limit=20&amp;after=1234&amp;maintenanceNeeded=true&amp;doorStatus=UNLOCKED&amp;minMileage=50000&amp;fields=mileage,oilLevel
+         * @throws IllegalArgumentException (a 400) for malformed values.
+         */
+        private static VehicleListQuery listQueryFrom(Map<String, String> params) {
+                try {
+                        return new VehicleListQuery(
+                                params.containsKey("after") ? Long.valueOf(params.get("after")) : null,
+                                params.containsKey("limit") ? Integer.valueOf(params.get("limit")) : null,
+                                params.containsKey("maintenanceNeeded") ? Boolean.valueOf(params.get("maintenanceNeeded")) : null,
+                                params.get("doorStatus"),
+                                params.containsKey("minMileage") ? Float.valueOf(params.get("minMileage")) : null,
+                                params.containsKey("fields") ? Arrays.asList(params.get("fields").split(",")) : null);
+                }
+                catch (NumberFormatException nfe) {
+                        throw new IllegalArgumentException("Invalid vehicle list parameter: " + nfe.getMessage());
+                }
+        }
+
+        /**
+         * Add the next page cursor (if there is one) as a response header.
+         */
+        private static Route withNextPageHeader(WebPortalMsg.VehicleListToWebP page, Supplier<Route> inner) {
+                if (page.nextAfter == null) {
+                        return inner.get();
+                }
+                return respondWithHeader(RawHeader.create(NEXT_PAGE_HEADER, page.nextAfter.toString()), inner);
+        }
+
+        /**
+         * The vehicles for a fleet manager, one JSON document per line, written
+         * out chunk by chunk as the manager sends them (so neither the whole
+         * list nor its JSON is ever held here at once).
+         */
+        private Source<ByteString, NotUsed> streamVehicleList(long managerId) {
+                Source<Vehicle, NotUsed> vehicles;
+                List<Vehicle> cached = nearCache.getFleet(managerId);
+                if (cached != null) {
+                        vehicles = Source.from(cached);
+                }
+                else {
+                        ActorRef<VehicleWebQuery.Message> vehicleWebQueryRef =
+                                refs.requireVehicleWebQueryRef();
+                        // An actor-backed source: the chunks are told to it (there is
+                        // no ask - the reply is many messages) and it completes on the
+                        // final chunk. It acks each chunk once it is written out,
+                        // and the manager sends the next only then - so a slow
+                        // client slows the manager down, rather than fill our heap.
+                        String streamId = UUID.randomUUID().toString();
+                        Pair<ActorRef<WebPortalMsg.VehicleListChunkToWebP>, Source<WebPortalMsg.VehicleListChunkToWebP, NotUsed>> chunks =
+                                ActorSource.<WebPortalMsg.VehicleListChunkToWebP, VehicleWebQuery.Message>actorRefWithBackpressure(
+                                        vehicleWebQueryRef,
+                                        new VehicleWebQuery.StreamVehiclesAck(managerId, streamId),
+                                        chunk -> chunk.last ? Optional.of(CompletionStrategy.draining()) : Optional.empty(),
+                                        chunk -> Optional.empty())
+                                .preMaterialize(system);
+                        vehicleWebQueryRef.tell(
+                                new VehicleWebQuery.StreamVehiclesJson(managerId, streamId, chunks.first()));
+                        vehicles = chunks.second()
+                                // The manager may be gone - fail the stream (the client
+                                // sees the response broken off, not a short list)
+                                // rather than wait forever.
+                                .idleTimeout(askTimeout)
+                                .mapConcat(chunk -> chunk.vehicles);
+                }
+                return vehicles.map(vehicle -> ByteString.fromArray(JsonVehicleCodec.INSTANCE.encode(vehicle)).concat(NEWLINE));
         }
 
         private CompletionStage<WebPortalMsg.VehicleToWebP> getVehicle(long managerId, long vehicleId) {
-                return AskPattern.ask(webPortalGuardianRef, ref -> new WebPortalGuardian.WebGetVehicleJson(managerId, vehicleId, ref),
+                Vehicle cached = nearCache.getVehicle(managerId, vehicleId);
+                if (cached != null) {
+                        return CompletableFuture.completedFuture(new WebPortalMsg.VehicleToWebP(cached));
+                }
+                CompletionStage<WebPortalMsg.VehicleToWebP> reply = AskPattern.ask(
+                                refs.requireVehicleWebQueryRef(),
+                                ref -> new VehicleWebQuery.GetVehicleJson(managerId, vehicleId, ref), askTimeout, scheduler);
+                return reply.thenApply(theMessage -> {
+                        if (theMessage.vehicle != null) {
+                                nearCache.putVehicles(managerId, Collections.singletonList(theMessage.vehicle));
+                        }
+                        return theMessage;
+                });
+        }
+
+        /**
+         * Change the vehicle ids a fleet manager owns (via the Registry, which
+         * must accept them). 'added' and 'removed' are ids and ranges, e.g.
+         * "0-2499, 3000" (@see VehicleIdSet.parse).
+         * @throws IllegalArgumentException (a 400) for malformed ids.
+         */
+        private CompletionStage<WebPortalMsg.VehicleIdsToWebP> changeVehicleIds(
+                        long managerId, Optional<String> added, Optional<String> removed) {
+                VehicleIdSet addedIds = VehicleIdSet.parse(added.orElse(""));
+                VehicleIdSet removedIds = VehicleIdSet.parse(removed.orElse(""));
+                return AskPattern.ask(refs.requireRegistryRef(),
+                                ref -> new Registry.ChangeFleetVehicleIds(managerId, addedIds, removedIds, ref),
                                 askTimeout, scheduler);
         }
 
@@ -173,6 +547,11 @@ public class WebPortalRoutes extends WebPortalMsg {
                 // Your exception handler
                 final ExceptionHandler exceptionHandler = ExceptionHandler.newBuilder()
                         .match(NoSuchElementException.class, ex -> complete(StatusCodes.NOT_FOUND, ex.getMessage()))
+                        .match(IllegalArgumentException.class, ex -> complete(StatusCodes.BAD_REQUEST, ex.getMessage()))
+                        // Only what the client can retry - not any IllegalStateException.
+                        .match(WebPortalRefsNotReadyException.class, ex -> complete(StatusCodes.SERVICE_UNAVAILABLE, ex.getMessage()))
+                        .match(WotIngestQueue.QueueFullException.class, ex -> complete(StatusCodes.SERVICE_UNAVAILABLE, ex.getMessage()))
+                        .match(VehicleEventLostException.class, ex -> complete(StatusCodes.SERVICE_UNAVAILABLE, ex.getMessage()))
                         .build();
 
                 // Combining the two handlers only for convenience
@@ -182,11 +561,12 @@ public class WebPortalRoutes extends WebPortalMsg {
                         inner
                 );
 
-                // We are using an 'actor per request' pattern. So:
-                // For every single request we spawn a 'VehicleEvent' actor.
-                // - This actor talks to the AKKA system and does whatever we need
+                // Each request is sent straight to the actor that handles it (vehicle
+                // updates to the ingestion pool, queries to the Registry or the
+                // VehicleWebQuery actor) - never via the guardian.
+                // - That actor talks to the AKKA system and does whatever we need
                 // asynchronously.
-                // - We *EXPECT* a response from it (we block here until we get a response)
+                // - We *EXPECT* a response from it (we wait here until we get a response)
                 // - Then when it responds we send that back to the user as the HTTP response
                 return handleErrors.apply(() -> cors(() -> handleErrors.apply(() ->
                         concat(
@@ -206,15 +586,20 @@ public class WebPortalRoutes extends WebPortalMsg {
                         // rejectEmptyResponse: replaces a response with no content with an empty
                         // rejection.
 
-                        // This path handles EVERY wot update. Adequate for toy system
-                        path("wot", () -> post(() -> entity(Jackson.unmarshaller(Vehicle.class),
-                                vehicle -> onSuccess(vehicleToWotHandlerViaGuardian(vehicle),
-                                        theMessage -> complete(StatusCodes.OK,
-                                                theMessage.vehicle, Jackson.marshaller()))))),
+                        // This path handles EVERY wot update. Bounded by the ingest queue.
+                        path("wot", () -> post(() -> entity(Jackson.unmarshaller(Vehicle.class), this::wotUpdate))),
+
+                        // Many WoT updates in one request (a JSON array, or NDJSON -
+                        // one vehicle per line; streamed). For gateways aggregating
+                        // many vehicles.
+                        path(PathMatchers.segment("wot").slash("batch"), () -> post(() -> extractDataBytes(
+                                body -> onSuccess(vehicleBatch(body),
+                                        theMessage -> complete(wotAckOnAccept ? StatusCodes.ACCEPTED : StatusCodes.OK,
+                                                theMessage, Jackson.marshaller()))))),
 
                         // This path handles EVERY web update. Adequate for toy system
                         path("web", () -> post(() -> entity(Jackson.unmarshaller(Vehicle.class),
-                                vehicle -> onSuccess(vehicleToWebHandlerViaGuardian(vehicle),
+                                vehicle -> onSuccess(vehicleEvent(vehicle, VehicleEventMsg.Source.WEB),
                                         theMessage -> complete(StatusCodes.OK,
                                                 theMessage.vehicle, Jackson.marshaller()))))),
 
@@ -226,15 +611,39 @@ public class WebPortalRoutes extends WebPortalMsg {
                         // List all active vehicles for the selected fleet
                         path(PathMatchers.segment("web").slash("list_vehicles"),
                                 () -> parameter(StringUnmarshallers.INTEGER,"fleetManager",
-                                fleetManager -> onSuccess(requestVehicleList(fleetManager),
-                                        theMessage -> complete(StatusCodes.OK, theMessage.vehicles, Jackson.marshaller())))),
+                                fleetManager -> parameterMap(params -> {
+                                        VehicleListQuery query = listQueryFrom(params);
+                                        return onSuccess(requestVehicleList(fleetManager, query),
+                                                theMessage -> withNextPageHeader(theMessage,
+                                                        () -> complete(StatusCodes.OK, theMessage.vehicles, Jackson.marshaller())));
+                                }))),
+
+                        // Stream all active vehicles for the selected fleet (NDJSON,
+                        // chunked transfer encoding)
+                        path(PathMatchers.segment("web").slash("stream_vehicles"),
+                                () -> parameter(StringUnmarshallers.INTEGER,"fleetManager",
+                                fleetManager -> complete(HttpEntities.createChunked(NDJSON, streamVehicleList(fleetManager))))),
 
                         // List all details for the selected vehicle
                         path(PathMatchers.segment("web").slash("get_vehicle"),
                                 () -> parameter(StringUnmarshallers.INTEGER,"fleetManager",
                                 fleetManager -> parameter("vehicleId",
                                 vehicleId -> onSuccess(getVehicle(fleetManager, Vehicle.wotIdToLongId(vehicleId)),
-                                        theMessage -> complete(StatusCodes.OK, theMessage.vehicle, Jackson.marshaller())))))
+                                        theMessage -> (theMessage.vehicle == null)
+                                                ? complete(StatusCodes.NOT_FOUND, "Vehicle not found. It may have been switched off...")
+                                                : complete(StatusCodes.OK, theMessage.vehicle, Jackson.marshaller()))))),
+
+                        // Change the vehicle ids the selected fleet owns, e.g.
+                        // ?fleetManager=10000&added=2500-2999&removed=0-499
+                        path(PathMatchers.segment("web").slash("change_vehicle_ids"),
+                                () -> post(() -> parameter(StringUnmarshallers.LONG, "fleetManager",
+                                fleetManager -> parameterOptional("added",
+                                added -> parameterOptional("removed",
+                                removed -> onSuccess(changeVehicleIds(fleetManager, added, removed),
+                                        theMessage -> (theMessage.vehicleIds == null)
+                                                ? complete(StatusCodes.NOT_FOUND, theMessage.rejection)
+                                                : complete((theMessage.rejection == null) ? StatusCodes.OK : StatusCodes.CONFLICT,
+                                                        theMessage, Jackson.marshaller())))))))
 
                 ))));
         }
@@ -53,9 +53,9 @@ public class WebPortalStart {
       // Send a message to the guardian just so we can see it start...
       webPortalGuardianRef.tell(new WebPortalGuardian.BootStrap("Leet-Fleet"));
 
-      // Pass the ***Guardian*** Ref in to the constructor for the Routes class
-      // This gives us full access to the Guardians actor context for this system.
-      WebPortalRoutes vehicleEventRoutes = new WebPortalRoutes(context.getSystem(), webPortalGuardianRef);
+      // The Routes talk directly to the actors the guardian spawns/discovers
+      // (@see WebPortalRefs) - not to the guardian itself.
+      WebPortalRoutes vehicleEventRoutes = new WebPortalRoutes(context.getSystem());
 
       // Now start the server!
       startHttpServer(vehicleEventRoutes.vehicleEventRoutes(), context.getSystem());
@@ -0,0 +1,198 @@
+package lf.webportal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.typesafe.config.Config;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.stream.BoundedSourceQueue;
+import akka.stream.OverflowStrategy;
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.SourceQueueWithComplete;
+import lf.message.WebPortalMsg;
+import lf.model.Vehicle;
+
+/**
+ * The bounded pipeline every /wot update goes through on its way to the
+ * ingestion pool: an Akka Streams queue, then an ask stage with limited
+ * parallelism. Without it nothing bounds the updates in flight - each one is
+ * just another message in an (unbounded) mailbox - and a reconnect storm grows
+ * the heap until the JVM falls over.
+ * <p>
+ * At most 'parallelism' updates are in flight at once (each until its fleet
+ * manager answers, or the ask times out). When updates arrive faster than
+ * that drains, the queue fills to 'buffer-size' and then the 'overflow' policy
+ * applies:
+ * <ul>
+ *  <li>drop-new - the update is refused (the route answers 503). The offer
+ *      is answered synchronously (a BoundedSourceQueue) - no future, no
+ *      waiting offers to bound.</li>
+ *  <li>drop-oldest - the oldest queued update is dropped to make room. The
+ *      stream doesn't say which, so the dropped update is never answered:
+ *      only for the 'accepted' ack mode (the routes refuse to start with it
+ *      otherwise).</li>
+ *  <li>backpressure - the route waits for room, so it stops reading from that
+ *      connection. Beyond 'max-concurrent-offers' waiting updates, the update
+ *      is refused.</li>
+ * </ul>
+ * Updates leave the queue in arrival order, so each vehicle's updates still
+ * reach the ingestion pool in order.
+ * <p>
+ * A /wot/batch request's updates for one fleet manager go through as a single
+ * job (@see process(Supplier)) - one queue slot and one ask for the lot.
+ */
+public class WotIngestQueue {
+
+    public enum OverflowPolicy {
+        DROP_NEW, DROP_OLDEST, BACKPRESSURE;
+
+        public static OverflowPolicy forName(String name) {
+            switch (name.toLowerCase()) {
+                case "drop-new":
+                    return DROP_NEW;
+                case "drop-oldest":
+                    return DROP_OLDEST;
+                case "backpressure":
+                    return BACKPRESSURE;
+                default:
+                    throw new IllegalArgumentException("Unknown overflow policy: " + name);
+            }
+        }
+
+    }
+
+    /**
+     * The update couldn't be queued. The routes answer 503.
+     */
+    public static class QueueFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public QueueFullException() {
+            super("Too many WoT updates queued. Retry later.");
+        }
+    }
+
+    // One queued unit of work - an update, or a batch of them for one fleet
+    // manager. 'result' is completed with its answer.
+    private static final class Job<T> {
+        final Supplier<CompletionStage<T>> work;
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+
+        Job(Supplier<CompletionStage<T>> work) {
+            this.work = work;
+        }
+
+        // Failures (and exceptions thrown) only fail this job.
+        CompletionStage<Done> run() {
+            try {
+                return work.get().handle((reply, failure) -> {
+                    if (failure != null) {
+                        result.completeExceptionally(failure);
+                    }
+                    else {
+                        result.complete(reply);
+                    }
+                    return Done.getInstance();
+                });
+            }
+            catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return CompletableFuture.completedFuture(Done.getInstance());
+            }
+        }
+    }
+
+    // Offers a job to the queue (whichever kind it is).
+    private final Function<Job<?>, CompletionStage<QueueOfferResult>> queue;
+    // Hands one update on.
+    private final Function<Vehicle, CompletionStage<WebPortalMsg.VehicleToWebP>> ingest;
+
+    /**
+     * @param config  The queue settings ("akka.routes.ingest.queue").
+     * @param ingest  Hands one update on (an ask, with a timeout), completing
+     *                with the answer. Failures (and exceptions thrown) only
+     *                fail that update.
+     */
+    public WotIngestQueue(ActorSystem<?> system, Config config,
+            Function<Vehicle, CompletionStage<WebPortalMsg.VehicleToWebP>> ingest) {
+        this.ingest = ingest;
+        OverflowPolicy overflow = OverflowPolicy.forName(config.getString("overflow"));
+        int bufferSize = config.getInt("buffer-size");
+        Sink<Job<?>, NotUsed> handler = Flow.<Job<?>>create()
+            .mapAsyncUnordered(config.getInt("parallelism"), Job::run)
+            .to(Sink.ignore());
+        switch (overflow) {
+            case DROP_NEW:
+                BoundedSourceQueue<Job<?>> bounded = Source.<Job<?>>queue(bufferSize).to(handler).run(system);
+                this.queue = job -> CompletableFuture.completedFuture(bounded.offer(job));
+                break;
+            default:
+                SourceQueueWithComplete<Job<?>> waiting = Source.<Job<?>>queue(bufferSize,
+                        (overflow == OverflowPolicy.DROP_OLDEST) ? OverflowStrategy.dropHead() : OverflowStrategy.backpressure(),
+                        config.getInt("max-concurrent-offers"))
+                    .to(handler)
+                    .run(system);
+                this.queue = waiting::offer;
+        }
+    }
+
+    /**
+     * Queue an update and wait for it to be handled.
+     *
+     * @return Completes with the fleet manager's answer. Fails with a
+     *         QueueFullException if it was refused, or as the ask failed.
+     */
+    public CompletionStage<WebPortalMsg.VehicleToWebP> process(Vehicle vehicle) {
+        return process(() -> ingest.apply(vehicle));
+    }
+
+    /**
+     * Queue any other work towards the fleet managers (e.g. a batch of
+     * updates for one manager) and wait for it to be done. It counts against
+     * the same bounds as an update.
+     *
+     * @param work Starts the work (an ask, with a timeout).
+     * @return As process(Vehicle).
+     */
+    public <T> CompletionStage<T> process(Supplier<CompletionStage<T>> work) {
+        Job<T> job = new Job<T>(work);
+        // NOTE: Failed directly (not thrown from a stage) so the route's
+        //       exception handler sees the QueueFullException itself, not a
+        //       CompletionException wrapping it.
+        queue.apply(job).whenComplete((offered, failure) -> {
+            if (failure != null || !QueueOfferResult.enqueued().equals(offered)) {
+                job.result.completeExceptionally(new QueueFullException());
+            }
+        });
+        return job.result;
+    }
+
+    /**
+     * Queue an update - don't wait for it to be handled.
+     *
+     * @return Completes true once the update is queued, false if it was refused
+     *         (the queue is full, under drop-new or backpressure).
+     */
+    public CompletionStage<Boolean> offer(Vehicle vehicle) {
+        return offer(() -> ingest.apply(vehicle));
+    }
+
+    /**
+     * Queue other work (@see process(Supplier)) - don't wait for it to be done.
+     *
+     * @return As offer(Vehicle).
+     */
+    public <T> CompletionStage<Boolean> offer(Supplier<CompletionStage<T>> work) {
+        return queue.apply(new Job<T>(work))
+            .handle((result, failure) -> failure == null && QueueOfferResult.enqueued().equals(result));
+    }
+
+}